@@ -0,0 +1,218 @@
+package elevator;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Title:        Green Elevator
+ * Description:  Green Elevator, 2G1915
+ * Copyright:    Copyright (c) 2001
+ * Company:      IMIT/KTH
+ *
+ * @author Vlad Vlassov
+ * @version 1.0
+ */
+
+/**
+ * One simulated building: its configuration (the number of elevators, the top floor,
+ * the precision and the motion limits, the clocking and the I/O ports), the Model of
+ * its elevators, the simulation core and the I/O thread. Nothing of a building is kept
+ * in static variables, so one JVM can run many buildings concurrently, e.g. a parameter
+ * sweep with one controller per building.
+ * <p>The Elevators application creates one building per "-buildings" count from the
+ * command line options (the static variables of <code>Elevators</code>). The first
+ * building is the one shown by the GUI and controlled via Java RMI; without GUI every
+ * building runs its own clock and, with the "-tcp" option, listens on its own ports:
+ * the ports of the first building shifted by
+ * <code>(number - 1) * (|outPort - inPort| + 1)</code>. Journals of several buildings
+ * and snapshots are the given file names with "%d" replaced by the building number,
+ * or with ".<i>number</i>" appended.
+ * @author Vlad Vlassov, IMIT/KTH, Stockholm, Sweden
+ * @version 1.0
+ * @see elevator.Elevators
+ */
+public class Building {
+    // the number of buildings that have not stopped yet
+    private static final AtomicInteger running = new AtomicInteger();
+    // configuration
+    final int number;
+    final int numberOfElevators;
+    final int topFloor;
+    final int numberOfFloors;
+    final double step;
+    final double acceleration;
+    final double jerk;
+    final boolean posOutput;
+    final boolean tcp;
+    final int inPort;
+    final int outPort;
+    final boolean events;
+    final int tickPeriod;
+    final String recordFile;
+    final String replayFile;
+    final String restoreFile;
+    // the Model, the simulation core and the I/O
+    final FleetState fleet;
+    final Elevator[] allElevators;
+    final ElevatorSimulation simulation;
+    ElevatorIO io;
+    // the clock started without GUI, halted when the building stops
+    private SimulationClock clock;
+    private EventClock eventClock;
+    private final AtomicBoolean stopped = new AtomicBoolean();
+
+    /**
+     * Creates the building with the given number configured by the command line options:
+     * creates the Model of its elevators and the simulation core, and opens its journals.
+     * @param number the number of the building (1, 2, ...)
+     * @param buildings the number of buildings in the JVM
+     */
+    public Building(int number, int buildings) {
+        this.number = number;
+        running.incrementAndGet();
+        numberOfElevators = Elevators.numberOfElevators;
+        topFloor = Elevators.topFloor;
+        numberOfFloors = topFloor + 1;
+        step = Elevators.step;
+        acceleration = Elevators.acceleration;
+        jerk = Elevators.jerk;
+        posOutput = Elevators.posOutput;
+        tcp = Elevators.tcp;
+        int shift = (number - 1) * (Math.abs(Elevators.outPort - Elevators.inPort) + 1);
+        inPort = Elevators.inPort + shift;
+        outPort = Elevators.outPort + shift;
+        events = Elevators.events;
+        tickPeriod = Elevators.tickPeriod;
+        recordFile = fileName(Elevators.recordFile, buildings);
+        replayFile = fileName(Elevators.replayFile, buildings);
+        restoreFile = fileName(Elevators.restoreFile, buildings);
+        fleet = new FleetState(numberOfElevators, topFloor);
+        allElevators = new Elevator[numberOfElevators + 1];
+        for (int i = 0; i < numberOfElevators; i++) {
+            allElevators[i] = new Elevator(fleet, i + 1);
+        }
+        if (acceleration > 0) fleet.setMotionProfile(new MotionProfile(step, acceleration, jerk));
+        simulation = new ElevatorSimulation(this, Elevators.workers);
+        simulation.getTimeWarp().setFactor(Elevators.warp);
+        if (restoreFile != null) {
+            try {
+                Snapshot.restore(this, restoreFile);
+            } catch (IOException e) {
+                System.err.println("Cannot restore the snapshot. See below. Exiting... Bye, bye");
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+        try {
+            if (recordFile != null) simulation.setRecorder(new Recorder(this, recordFile));
+            if (replayFile != null) simulation.setReplayer(new Replayer(this, replayFile));
+        } catch (IOException e) {
+            System.err.println("Cannot open the journal. See below. Exiting... Bye, bye");
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Returns the name of the journal of this building.
+     */
+    private String fileName(String name, int buildings) {
+        if (name == null) return null;
+        if (name.indexOf("%d") >= 0) return String.format(name, number);
+        return (buildings > 1) ? name + "." + number : name;
+    }
+
+    /**
+     * Starts the building without GUI: creates the ElevatorIO object that provides
+     * input/output (and waits for a controller to connect if the "-tcp" option is set),
+     * and starts a <code>SimulationClock</code> or an <code>EventClock</code>.
+     * In the replay mode the input streams are not read, the commands come from the journal.
+     */
+    public void start() {
+        simulation.getTimeWarp().setBasePeriod(tickPeriod);
+        io = new ElevatorIO(this);
+        if (number == 1) ElevatorGUI.io = io;
+        System.err.println("Starting IO of building " + number + " (headless" + (events ? ", discrete events" : "") +
+                (replayFile != null ? ", replay of " + replayFile : "") +
+                (restoreFile != null ? ", restored from " + restoreFile + " at time step " + simulation.getTick() : "") +
+                (tcp ? ", ports " + inPort + "/" + outPort : "") +
+                "), time step = " + tickPeriod + " ms, time warp = " + simulation.getTimeWarp().getFactor());
+        if (events) {
+            eventClock = new EventClock(simulation);
+            eventClock.start();
+        } else {
+            clock = new SimulationClock(simulation);
+            clock.start();
+        }
+        if (replayFile == null) io.start();
+    }
+
+    /**
+     * Stops the building, e.g. when its controller has quit or its replay has finished:
+     * halts its clock. The application exits when the last building stops. Stopping a
+     * building again has no effect.
+     */
+    public void stop() {
+        if (!stopped.compareAndSet(false, true)) return;
+        if (eventClock != null) eventClock.halt();
+        if (clock != null) clock.halt();
+        if (running.decrementAndGet() == 0) System.exit(0);
+    }
+
+    /**
+     * Returns the number of this building.
+     * @return the number of the building (1, 2, ...)
+     */
+    public int getNumber() {
+        return number;
+    }
+
+    /**
+     * Returns the number of elevators in this building.
+     * @return the number of elevators
+     */
+    public int getNumberOfElevators() {
+        return numberOfElevators;
+    }
+
+    /**
+     * Returns the number of the top floor of this building.
+     * @return the number of the top floor
+     */
+    public int getTopFloor() {
+        return topFloor;
+    }
+
+    /**
+     * Returns the movement step of an elevator, i.e. the precision of the model.
+     * @return the movement step in floor units per time step
+     */
+    public double getStep() {
+        return step;
+    }
+
+    /**
+     * Returns the state of the elevators of this building.
+     * @return the <code>FleetState</code> of the Model
+     */
+    public FleetState getFleet() {
+        return fleet;
+    }
+
+    /**
+     * Returns the simulation core of this building.
+     * @return the <code>ElevatorSimulation</code>
+     */
+    public ElevatorSimulation getSimulation() {
+        return simulation;
+    }
+
+    /**
+     * Returns the I/O of this building.
+     * @return the <code>ElevatorIO</code>, or null if the building has not started yet
+     */
+    public ElevatorIO getIO() {
+        return io;
+    }
+}
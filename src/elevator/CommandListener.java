@@ -0,0 +1,24 @@
+package elevator;
+
+/**
+ * Title:        Green Elevator
+ * Description:  Green Elevator, 2G1915
+ * Copyright:    Copyright (c) 2001
+ * Company:      IMIT/KTH
+ *
+ * @author Vlad Vlassov
+ * @version 1.0
+ */
+
+/**
+ * The listener interface for receiving notifications about control commands
+ * (start/stop a motor, open/close a door) applied to the state of a fleet of elevators.
+ * @see elevator.FleetState#setCommandListener(CommandListener)
+ */
+public interface CommandListener {
+    /**
+     * Invoked after the direction of the motor or of the door of an elevator has been set.
+     * @param index the index of the elevator (0, 1, ...)
+     */
+    void commandIssued(int index);
+}
@@ -27,41 +27,31 @@ import javax.swing.JComponent;
  * <li>The current direction of the movement of the door (opening, closing, still).
  * <li>The current position of the elevator scale (the level indicator)
  * </ul>
+ * <p>The state is held in the primitive arrays of a <code>FleetState</code> shared
+ * by all elevators; an <code>Elevator</code> is a view of one entry of the fleet.
+ * Updates of the state are atomic and do not need external synchronization.
  * @author Vlad Vlassov, IMIT/KTH, Stockholm, Sweden
  * @version 1.0
  * @see     elevator.rmi.Elevator
  */
 public class Elevator {
-    /**
-     * Object used to synchronize updates to the state of the motor of this elevator
-     */
-    protected Object motorLock = new Object();
-    /**
-     * Object used to synchronize updates to the state of the door of this elevator
-     */
-    protected Object doorLock = new Object();
     // private fields
-    private int boxdir = 0;
-    private int doordir = 0;
-    private double boxpos = 0;
-    private int scalepos = 0;
-    private int doorstat = DoorStatus.CLOSED;
-    private int topFloor = 0;
+    private FleetState fleet;
+    private int index;
     private int number = 0;
     private JComponent window;
     private JComponent scale;
 
     /**
      * Constructs an instance of <code>Elevator</code> that represents the elevator
-     * with the given number. Sets the position of the elevator cabin at the bottom
-     * floor, sets the value of the elevator scale to the bottom floor number.
+     * with the given number in the given fleet.
+     * @param fleet the <code>FleetState</code> that holds the state of the elevator
      * @param number the integer number of the elevator represented by this <code>Elevator</code>
      */
-    public Elevator(int number) {
-        scalepos = 0;
-        boxpos = 0.0;
-        this.topFloor = Elevators.topFloor;
+    public Elevator(FleetState fleet, int number) {
+        this.fleet = fleet;
         this.number = number;
+        this.index = number - 1;
     }
 
     /**
@@ -69,17 +59,7 @@ public class Elevator {
      * @param f float position to be set.
      */
     public void Setpos(double f) {
-        if (f < 0) {
-            System.err.println("In Setpos: Position out of range = " + f);
-            boxpos = 0;
-            return;
-        }
-        if (f > topFloor) {
-            System.err.println("In Setpos: Position out of range = " + f);
-            boxpos = topFloor;
-            return;
-        }
-        boxpos = f; //still here ?
+        fleet.setPosition(index, f);
     }
 
     /**
@@ -88,17 +68,7 @@ public class Elevator {
      * @param s the integer state code to be set.
      */
     public void Setdoorstat(int s) {
-        if (s < DoorStatus.CLOSED) {
-            System.err.println("In Setdoorstat: Doorstatus out of range = " + s);
-            doorstat = DoorStatus.CLOSED;
-            return;
-        }
-        if (s > DoorStatus.OPEN4) {
-            System.err.println("In Setdoorstat: Doorstatus out of range = " + s);
-            doorstat = DoorStatus.OPEN4;
-            return;
-        }
-        doorstat = s; //still here ?
+        fleet.setDoorStatus(index, s);
     }
 
     /**
@@ -107,12 +77,7 @@ public class Elevator {
      * @param d an integer code of the direction to be set.
      */
     public void Setdir(int d) {
-        if (d < -1 || d > 1) {
-            System.err.println("In Setdir: Direction out of range = " + d);
-            boxdir = 0;
-        } else {
-            boxdir = d;
-        }
+        fleet.setMotorDirection(index, d);
     }
 
     /**
@@ -121,12 +86,7 @@ public class Elevator {
      * @param d the integer code of the direction to be set.
      */
     public void Setdoor(int d) {
-        if (d < -1 || d > 1) {
-            System.err.println("In Setdoor: Direction out of range = " + d);
-            doordir = 0;
-        } else {
-            doordir = d;
-        }
+        fleet.setDoorDirection(index, d);
     }
 
     /**
@@ -134,11 +94,7 @@ public class Elevator {
      * @param s the integer position value to be set.
      */
     public void Setscalepos(int s) {
-        if (s < 0 || s > topFloor) {
-            System.err.println("In Setscale: Scalevalue out of range = " + s);
-        } else {
-            scalepos = s;
-        }
+        fleet.setScale(index, s);
     }
 
     /**
@@ -164,7 +120,7 @@ public class Elevator {
      * @return the current position of the cabin as a double value in "floor units".
      */
     public double Getpos() {
-        return boxpos;
+        return fleet.getPosition(index);
     }
 
     /**
@@ -173,7 +129,7 @@ public class Elevator {
      * @return the integer code of the current state of the door.
      */
     public int Getdoorstat() {
-        return doorstat;
+        return fleet.getDoorStatus(index);
     }
 
     /**
@@ -182,7 +138,7 @@ public class Elevator {
      * @return the integer code of the cabin movement direction.
      */
     public int Getdir() {
-        return boxdir;
+        return fleet.getMotorDirection(index);
     }
 
     /**
@@ -191,7 +147,7 @@ public class Elevator {
      * @return the the integer code of the door movement direction.
      */
     public int Getdoor() {
-        return doordir;
+        return fleet.getDoorDirection(index);
     }
 
     /**
@@ -199,7 +155,7 @@ public class Elevator {
      * @return the the integer value of the current position of the elevator scale.
      */
     public int Getscalepos() {
-        return scalepos;
+        return fleet.getScale(index);
     }
 
     /**
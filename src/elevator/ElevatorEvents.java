@@ -1,7 +1,6 @@
 package elevator;
 
 import java.awt.event.*;
-import java.io.PrintStream;
 
 /**
  * Title:        Green Elevator
@@ -19,15 +18,15 @@ import java.io.PrintStream;
  */
 public class ElevatorEvents extends WindowAdapter implements ActionListener {
 
-    private java.io.PrintStream out;
+    private ElevatorSimulation simulation;
 
     /**
      * Creates an instance ElevatorEvents listener
      */
-    public ElevatorEvents(PrintStream out) {
+    public ElevatorEvents(ElevatorSimulation simulation) {
 
         super();
-        this.out = out;
+        this.simulation = simulation;
     }
 
     /**
@@ -40,9 +39,11 @@ public class ElevatorEvents extends WindowAdapter implements ActionListener {
      * "p <i>n f</i>" (where "p" stands for "panel", <i>n</i> is the number
      * of the elevator where the button was pressed, <i>f</i> is a floor number
      * assigned with the button.
+     * <p>The action command is submitted to the simulation and printed at the beginning
+     * of the next time step, so that it can be journaled with the time step.
      */
     public void actionPerformed(ActionEvent e) {
-        out.println(e.getActionCommand());
+        simulation.submit(e.getActionCommand());
     }
 
     /**
@@ -17,16 +17,15 @@ import javax.swing.event.ChangeListener;
  */
 /**
  * Provides GUI for the Elevators application. The "View" part of the MVC application.
- * Receives action events from the application timer (clock) which generates the events
+ * Creates the application clock which performs time steps of the simulation
  * at a predefined rate controlled with the special JSlider gauge.
- * On each action event (time step), the ElevatorGUI object calls the ElevatorGraphics
- * object to perform an animation step, i.e. to inspect the status of the Model
- * (all elevators: motors, doors and scales) and to display
+ * After each time step, the ElevatorGraphics object inspects the status of the Model
+ * (all elevators: motors, doors and scales) in the event dispatching thread and displays
  * a new state (by repainting the ElevatorCanvas) if the state has changed
  * since the previous step.
  */
 
-public class ElevatorGUI extends JFrame implements ActionListener, ChangeListener {
+public class ElevatorGUI extends JFrame implements ChangeListener {
 	/**
 	 * An array of "arrow up" floor buttons
 	 */
@@ -49,22 +48,20 @@ public class ElevatorGUI extends JFrame implements ActionListener, ChangeListene
 	 */
 	public static ElevatorIO io;
 	/**
-	 * The application timer services as a clock that generates action events at a predefined rate
+	 * The application clock that performs time steps of the simulation at a predefined rate
 	 * controlled with the JSlider gauge.
-	 * On each action event (time step), the ElevatorGUI object calls the ElevatorGraphics
-	 * object to perform an animation step, i.t. to inspect the status of the Model
-	 * (all elevators: motors, doors and scales) and to display a new state
+	 * After each time step the ElevatorGraphics
+	 * object inspects the status of the Model
+	 * (all elevators: motors, doors and scales) and displays a new state
 	 * (by repainting the ElevatorCanvas)
 	 *  if the state has changed since the previous stemp.
 	 */
-	public static Timer timer;
+	public static SimulationClock clock;
 
 	Elevators elevators;
 	ElevatorGraphics graphics;
-	boolean animateAllAtOnce = true; // animate all elevators at time tick
 	boolean frozen = true;
 	boolean first = true;
-	int number = 0; // number of an elevator to animate
 	// get gloval variables
 	int numberOfElevators = Elevators.numberOfElevators;
 	int numberOfFloors = Elevators.numberOfFloors;
@@ -82,10 +79,6 @@ public class ElevatorGUI extends JFrame implements ActionListener, ChangeListene
 	 * Computed as (101- value_of_slider) * delayStep
 	 */
 	private static int delay = (101 - SLIDER_INIT) * delayStep;
-	/**
-	 * Velocity of the elevator in floors/milisec
-	 */
-	public static double velocity = Elevators.step / delay;
 	/**
 	 * Creates a graphical user interface of the Elevator Application,
 	 * creates an object with the ElevatorEvents class to listen for action
@@ -93,8 +86,8 @@ public class ElevatorGUI extends JFrame implements ActionListener, ChangeListene
 	 * creates an object with the ElevatorGraphics used to animate elevators,
 	 * creates an array of objects with the ElevatorCanvas class used to display
 	 * elevators,
-	 * creates and starts the Timer object that clocks animation in the
-	 * ElevatorGraphics object,
+	 * creates and starts the SimulationClock object that clocks the simulation
+	 * animated by the ElevatorGraphics object,
 	 * creates a object with the ElevatorIO class to handle application input/output
 	 * via standard input/output or TCP sockets or/and Java RMI in separate threads.
 	 */
@@ -107,8 +100,9 @@ public class ElevatorGUI extends JFrame implements ActionListener, ChangeListene
 		setResizable(false);
 		Container contentPane = getContentPane();
 		contentPane.setLayout(new BorderLayout());
-		io = new ElevatorIO(elevators);
-		ElevatorEvents listener = new ElevatorEvents(io.out);
+		elevators.simulation.getTimeWarp().setBasePeriod(delay);
+		io = new ElevatorIO(elevators.allBuildings[0]);
+		ElevatorEvents listener = new ElevatorEvents(elevators.simulation);
 		graphics = new ElevatorGraphics(elevators);
 		addWindowListener(listener);
 		// create arrays for widgets
@@ -243,9 +237,8 @@ public class ElevatorGUI extends JFrame implements ActionListener, ChangeListene
 		p2.setPreferredSize(insideControlsPanelSize);
 		p1.add(p2);
 		contentPane.add(p1, "East"); // add floor controls panel
-		//Set up a timer that calls this object's action handler.
-		timer = new Timer(delay, this);
-		timer.setInitialDelay(delay);
+		//Set up a clock that performs time steps of the simulation.
+		clock = new SimulationClock(elevators.simulation);
 		System.err.println("Starting UI and IO");
 		pack();
 		if (delay > 0) startAnimation();
@@ -254,53 +247,38 @@ public class ElevatorGUI extends JFrame implements ActionListener, ChangeListene
 		io.start();
 	}
 	/**
-	 * Invoked from the Timer object (that services as a clock)
-	 * with a predefined rate controlled with a JSlider guage
-	 */
-	public void actionPerformed(ActionEvent e) { // from the timer
-		if (animateAllAtOnce) graphics.animateAll();
-		else {
-			graphics.animate(number);
-			number++;
-			if (number >= numberOfElevators) number = 0;
-		}
-	}
-	/**
-	 * Gets a new value from the JSlider gauge used to control the Timer rate,
-	 * computes and sets a new rate to the Timer and restarts the Timer with the new
-	 * rate. Invoked when the Timer rate is changed with the JSlider gauge.
+	 * Gets a new value from the JSlider gauge used to control the clock rate,
+	 * computes and sets a new rate to the clock and restarts the clock with the new
+	 * rate. Invoked when the clock rate is changed with the JSlider gauge.
 	 */
 	public void stateChanged(ChangeEvent e) {
 		JSlider source = (JSlider)e.getSource();
 		if (!source.getValueIsAdjusting()) {
 			int value = (int)source.getValue();
 			delay = (101 - value) * delayStep;
-			velocity = (double)(Elevators.step / delay);
-			io.out.println("v " + velocity);
 			if (delay == 0) {
 				if (!frozen) stopAnimation();
 			} else {
-				timer.setDelay(delay);
-				timer.setInitialDelay(delay);
+				elevators.simulation.getTimeWarp().setBasePeriod(delay); // prints the new velocity
 				if (first) startAnimation();
 				else restartAnimation();
 			}
 		}
 	}
 	public void startAnimation() {
-		//Start timer!
-		timer.start();
+		//Start clock!
+		clock.start();
 		frozen = false;
 		first = false;
 	}
 	public void stopAnimation() {
-		//Stop timer!
-		timer.stop();
+		//Stop clock!
+		clock.setPaused(true);
 		frozen = true;
 	}
 	public void restartAnimation() {
-		//Restart timer!
-		timer.restart();
+		//Restart clock!
+		clock.setPaused(false);
 		frozen = false;
 	}
 }
\ No newline at end of file
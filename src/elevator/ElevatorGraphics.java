@@ -2,6 +2,8 @@ package elevator;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.SwingUtilities;
 
 /**
  * Title:        Green Elevator
@@ -12,117 +14,70 @@ import java.awt.event.ActionListener;
  * @version 1.0
  */
 /**
- * Provides animation of elevators at a rate of the amination Timer.
- * The <code>animate</code> or the <code>aminateAll</code>
- * methods are called at the rate set to the animation Timer of the ElevatorGUI object.
- * The methods check whether the state of the elevator(s) Model has changed and
- * if so, requests the ElevatorCanvas object(s) to repaint the elevator(s) with the new state.
- * How to animate, one elevator at a time step (with the animate method) or
- * all elevators at a time step (with the animateAll method) is controlled by
- * a "hard-coded" boolean variable <code>animateAllAtOnce</code> defined in the ElevatorGUI class.
- * Maybe this should be controlled with a command line option (to be fixed).
- * Now the option is set to true that means that the animateAll methos is called
- * each time step to update the view of ALL elevators rather than one at a time.
+ * Provides animation of elevators at a rate of the simulation clock.
+ * The <code>ElevatorGraphics</code> object listens for time steps of the
+ * <code>ElevatorSimulation</code>, which are performed by the clock thread outside the
+ * event dispatching thread. On a time step it requests (at most one pending request at
+ * a time) the event dispatching thread to present the elevators; the presentation
+ * checks whether the state of the elevator(s) Model has changed since the last
+ * presentation and if so, requests the ElevatorCanvas object(s) to repaint the
+ * elevator(s) with the new state.
  */
-public class ElevatorGraphics {
+public class ElevatorGraphics implements ActionListener, Runnable {
     // get values of some global variables
     int numberOfElevators = Elevators.numberOfElevators;
     int numberOfFloors = Elevators.numberOfFloors;
     int topFloor = Elevators.topFloor;
     // own
     private Elevator[] allElevators;
-    private java.io.PrintStream out;
+    private double[] shownPosition;
+    private int[] shownStatus;
+    private AtomicBoolean pending = new AtomicBoolean(false);
     /**
      * Creates an object with the ElevatorGraphics class, gets a reference to array
-     * of Elevator objects (the model of elevators) and the ElevatorIO object.
+     * of Elevator objects (the model of elevators) and listens for time steps of
+     * the simulation.
      * @param elevators a reference to the object of the Elevators primary class
      */
     public ElevatorGraphics(Elevators elevators) {
         allElevators = elevators.allElevators;
-        out = ElevatorIO.out;
+        shownPosition = new double[numberOfElevators];
+        shownStatus = new int[numberOfElevators];
+        elevators.simulation.addTickListener(this);
     }
     /**
-     * Gets a current state of one elevator and compares with the old (previous) state,
-     * requests to repaint the elevator if the old state has changed, stores the new
-     * state as the old state. Invoked on an event from the application Timer of the
-     * ElevatorGUI object.
-     * @param number is the elevator number to be animated
-     * @see #animateAll()
+     * Invoked by the simulation after each time step. Requests the event dispatching
+     * thread to present the elevators unless a request is still pending.
      */
-    public void animate(int number) { // only elevator with the current number
-        double position;
-        int stat, boxdir, doordir;
-        // to guarantee atomicity of this read-modify-write
-        synchronized (allElevators[number].motorLock) {
-            boxdir = allElevators[number].Getdir();
-            if(boxdir != Elevators.STOP){
-                //get position;
-                position = allElevators[number].Getpos();
-                //modify position;
-                position = position + (double)(boxdir * Elevators.step); // OBS fixed ? !!!;
-                //contol position;
-                if(position < 0.0) {
-                    boxdir = Elevators.STOP;
-                    position = (double)0.0;
-                }
-                if(position > topFloor) {
-                    boxdir = Elevators.STOP;
-                    position = topFloor;
-                }
-                //write back position and direction;
-                allElevators[number].Setpos(position);
-                allElevators[number].Setdir(boxdir);
-            }
-        }
-        // to guarantee atomicity of this read-modify-write
-        synchronized (allElevators[number].doorLock) {
-            doordir = allElevators[number].Getdoor();
-            if(doordir != Elevators.STOP){
-                //get doorstat;
-                stat = allElevators[number].Getdoorstat();
-                //contol door;
-                if(stat == DoorStatus.CLOSED && doordir == Elevators.CLOSE) {
-                    doordir = Elevators.STOP;
-                }
-                if(stat == DoorStatus.OPEN4 && doordir == Elevators.OPEN) {
-                    doordir = Elevators.STOP;
-                }
-                //modify door;
-                stat = stat + doordir;
-                //write back doorstat and doordir;
-                allElevators[number].Setdoorstat(stat);
-                allElevators[number].Setdoor(doordir);
-            }
-        }
-        if(doordir != Elevators.STOP || boxdir != Elevators.STOP) presentation(number);
-        scalePresentation(number);
+    public void actionPerformed(ActionEvent e) {
+        if (pending.compareAndSet(false, true)) SwingUtilities.invokeLater(this);
     }
     /**
-     * Gets a current state of all elevator (one by one) and compare with the old (previous) state,
-     * requests to repaint the elevator if the old state has changed, stores the new
-     * state as the old state. Invoked on an event from the application Timer of the
-     * ElevatorGUI object.
-     * @param number is the elevator number to be animated
-     * @see #animate(int)
+     * Presents all elevators in the event dispatching thread: requests to repaint
+     * the elevators whose state has changed since the last presentation and presents
+     * values of the scales.
      */
-    public void animateAll() { // animate all elevators
+    public void run() {
+        pending.set(false);
         for (int i = 0; i < numberOfElevators; i++) {
-            animate(i);
+            presentation(i);
+            scalePresentation(i);
         }
     }
     /**
      * Requests the corresponding ElevatorCanvas to repaint the given elevator
-     * according to its current (new) state,
-     * prints a current position of the elevator to the output stream (standard or
-     * socket)
+     * according to its current (new) state if the state has changed.
+     * The position of the elevator is printed
+     * to the output stream (standard or socket) by the simulation.
      */
     private void presentation(int number) {
         double position = allElevators[number].Getpos();
         int stat = allElevators[number].Getdoorstat();
+        if (position == shownPosition[number] && stat == shownStatus[number]) return;
+        shownPosition[number] = position;
+        shownStatus[number] = stat;
         ElevatorCanvas window = (ElevatorCanvas)allElevators[number].Getwin();
         window.showElevator(position, stat);
-        if (Elevators.posOutput)
-            out.println("f " + (number + 1) + " " + position);
     }
     /**
      * Presents a (new) value of the scale of the elevator with the given number
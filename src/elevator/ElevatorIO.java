@@ -1,5 +1,7 @@
 package elevator;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.net.*;
 import java.io.*;
 import java.util.StringTokenizer;
@@ -30,39 +32,54 @@ import elevator.ElevatorGUI;
  * (to listening servants).
  */
 public class ElevatorIO extends Thread {
-    // get global variables
-    int numberOfElevators = Elevators.numberOfElevators;
-    int numberOfFloors = Elevators.numberOfFloors;
-    int topFloor = Elevators.topFloor;
+    // get the configuration of the building
+    int numberOfElevators;
+    int numberOfFloors;
+    int topFloor;
     /**
      * The buffering character-input stream (BufferedReader) for reading char and String
      * from the input stream of the standard "input" or a TCP socket. Used for reading
      * control commands.
      * Initialized to BufferedReader for reading from the standard input
      */
-    protected static BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+    protected BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
     /**
      * The print stream for printing action commands from buttons and current positions
      * of elevators to the output stream of the standard "output" or a TCP socket.
      * Initialized to PrintStream for printing to the standard output
      */
-    protected static PrintStream out = System.out;
+    protected PrintStream out = System.out;
     private Elevator[] allElevators;
+    private ElevatorSimulation simulation;
+    private Building building;
 
     /**
      * Creates an instance of ElevatorIO that opens a TCP socket and waits until
      * a client (a controller) connects if Elevators has started with the "-tcp" option, it
      * creates a GetAllImpl object for controlling Elevators via Java RMI and binds
      * its reference (stub) to
-     * the "GetAll" name at the rmiregistry if Elevators has started with the "-rmi" option.
-     * @param elevators is a reference to the object of the Elevators primary class used
+     * the "GetAll" name at the rmiregistry if Elevators has started with the "-rmi" option
+     * (the first building only).
+     * @param building is a reference to the building used
      * to access the state of the Elevator objects (the Model)
      */
-    public ElevatorIO(Elevators elevators) {
-        super();
-        this.allElevators = elevators.allElevators;
-        if (Elevators.tcp) connectToClient(Elevators.inPort, Elevators.outPort);
-        if (Elevators.rmi) {
+    public ElevatorIO(Building building) {
+        super("IO of building " + building.getNumber());
+        this.building = building;
+        numberOfElevators = building.getNumberOfElevators();
+        topFloor = building.getTopFloor();
+        numberOfFloors = topFloor + 1;
+        this.allElevators = building.allElevators;
+        this.simulation = building.getSimulation();
+        simulation.attach(this);
+        // print the effective velocity whenever the rate of the simulation changes
+        simulation.getTimeWarp().addChangeListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                out.println(e.getActionCommand());
+            }
+        });
+        if (building.tcp) connectToClient(building.inPort, building.outPort);
+        if (Elevators.rmi && building.getNumber() == 1) {
             try {
                 if (System.getSecurityManager() == null) {
                     System.setSecurityManager(new RMISecurityManager());
@@ -80,6 +97,15 @@ public class ElevatorIO extends Thread {
         }
     }
 
+    /**
+     * Returns the simulation core that advances the state of the Model on each
+     * time step. Used by RMI servants to listen for time steps.
+     * @return the <code>ElevatorSimulation</code> of the application
+     */
+    public ElevatorSimulation getSimulation() {
+        return simulation;
+    }
+
     /**
      * Opens a TCP socket or a couple of sockets (if different ports are specified for
      * input and output) and waits until a client(s) connects.
@@ -134,72 +160,47 @@ public class ElevatorIO extends Thread {
             "d", "door",
             "s", "scale",
             "w", "where",
-            "v", "velocity"
+            "v", "velocity",
+            "t", "warp",
+            "k", "snapshot"
     };
 
     /**
      * Reads elevator commands from the standard or the socket (if open) input stream
-     * and executes over and over again until the input stream is closed or
-     * the "quit" is read from the stream
+     * and submits them to the simulation over and over again until the input stream is closed or
+     * the "quit" is read from the stream. The commands are executed by the simulation
+     * at the beginning of the next time step.
+     * @see #execute(String)
      */
     public void readInput() {
         String input;
         StringTokenizer tokenizer;
-        int elevatorNumber = 0, value = 0;
-        String[] tokens = new String[3];
+        String command;
         try {
             while ((input = in.readLine()) != null) {
                 if (input.equals("")) continue;
                 tokenizer = new StringTokenizer(input);
-                tokens[0] = tokenizer.nextToken();
-                if (tokens[0].equalsIgnoreCase("q") || tokens[0].equalsIgnoreCase("quit")) {
+                command = tokenizer.nextToken();
+                if (command.equalsIgnoreCase("q") || command.equalsIgnoreCase("quit")) {
                     System.out.println("Bye, bye :D");
-                    System.exit(0);
-                }
-                tokens[1] = tokens[2] = null;
-                if (tokenizer.hasMoreTokens()) {
-                    try {
-                        tokens[1] = tokenizer.nextToken();
-                        elevatorNumber = Integer.parseInt(tokens[1]);
-                    } catch (NumberFormatException e) {
-                        System.err.println("Illegal command: " + input);
-                        continue;
-                    }
-                }
-                if (tokenizer.hasMoreTokens()) {
-                    try {
-                        tokens[2] = tokenizer.nextToken();
-                        value = Integer.parseInt(tokens[2]);
-                    } catch (NumberFormatException e) {
-                        System.err.println("Illegal command: " + input);
-                        continue;
-                    }
-                }
-                if ((tokens[0].equalsIgnoreCase("m") || tokens[0].equalsIgnoreCase("move"))
-                        && tokens[1] != null && tokens[2] != null) {
-                    motor(elevatorNumber, value);
-                    continue;
-                }
-                if ((tokens[0].equalsIgnoreCase("s") || tokens[0].equalsIgnoreCase("scale"))
-                        && tokens[1] != null && tokens[2] != null) {
-                    scale(elevatorNumber, value);
-                    continue;
+                    // other buildings keep running until their controllers quit
+                    building.stop();
+                    return;
                 }
-                if ((tokens[0].equalsIgnoreCase("d") || tokens[0].equalsIgnoreCase("door"))
-                        && tokens[1] != null && tokens[2] != null) {
-                    door(elevatorNumber, value);
+                if (command.equalsIgnoreCase("v") || command.equalsIgnoreCase("velocity")) {
+                    out.println("v " + simulation.getTimeWarp().getVelocity());
                     continue;
                 }
-                if ((tokens[0].equalsIgnoreCase("w") || tokens[0].equalsIgnoreCase("where"))
-                        && tokens[1] != null) {
-                    where(elevatorNumber);
+                if (command.equalsIgnoreCase("t") || command.equalsIgnoreCase("warp")) {
+                    warp(input, tokenizer);
                     continue;
                 }
-                if (tokens[0].equalsIgnoreCase("v") || tokens[0].equalsIgnoreCase("velocity")) {
-                    out.println("v " + ElevatorGUI.velocity);
+                if (command.equalsIgnoreCase("b") || command.equalsIgnoreCase("p")) {
+                    // action commands of buttons are output only
+                    System.err.println("Illegal command: " + input);
                     continue;
                 }
-                System.err.println("Illegal command: " + input);
+                simulation.submit(input);
             }
         } catch (IOException e) {
             System.err.println("ReadInput: Cannot read input. See below. Exiting... Bye, bye");
@@ -208,6 +209,108 @@ public class ElevatorIO extends Thread {
         }
     }
 
+    /**
+     * Executes a "t" ("warp") command read from standard or socket input stream:
+     * sets the time-warp factor of the simulation, e.g. "t 100" runs the simulation
+     * a hundred times faster, "t 0" as fast as possible. The rate of the simulation does
+     * not affect its outcome, so the command is executed immediately rather than
+     * submitted to the simulation. The new velocity is printed as "v <i>value</i>".
+     */
+    private void warp(String input, StringTokenizer tokenizer) {
+        double factor;
+        try {
+            factor = Double.parseDouble(tokenizer.nextToken());
+        } catch (RuntimeException e) {
+            System.err.println("Illegal command: " + input);
+            return;
+        }
+        if (factor < 0) {
+            System.err.println("Illegal time warp: " + input);
+            return;
+        }
+        simulation.getTimeWarp().setFactor(factor);
+    }
+
+    /**
+     * Executes an elevator command submitted to the simulation, i.e. a control command
+     * read from the standard or the socket input stream or received via Java RMI,
+     * or prints an action command of a floor or an inside button to the output stream.
+     * Called by the simulation at the beginning of a time step.
+     * @param input the command, e.g. "m 1 1" or "b 2 -1"
+     */
+    void execute(String input) {
+        StringTokenizer tokenizer = new StringTokenizer(input);
+        int elevatorNumber = 0, value = 0;
+        String[] tokens = new String[3];
+        tokens[0] = tokenizer.nextToken();
+        if (tokens[0].equals("b") || tokens[0].equals("p")) {
+            out.println(input);
+            return;
+        }
+        if (tokens[0].equalsIgnoreCase("k") || tokens[0].equalsIgnoreCase("snapshot")) {
+            snapshot(input, tokenizer);
+            return;
+        }
+        if (tokenizer.hasMoreTokens()) {
+            try {
+                tokens[1] = tokenizer.nextToken();
+                elevatorNumber = Integer.parseInt(tokens[1]);
+            } catch (NumberFormatException e) {
+                System.err.println("Illegal command: " + input);
+                return;
+            }
+        }
+        if (tokenizer.hasMoreTokens()) {
+            try {
+                tokens[2] = tokenizer.nextToken();
+                value = Integer.parseInt(tokens[2]);
+            } catch (NumberFormatException e) {
+                System.err.println("Illegal command: " + input);
+                return;
+            }
+        }
+        if ((tokens[0].equalsIgnoreCase("m") || tokens[0].equalsIgnoreCase("move"))
+                && tokens[1] != null && tokens[2] != null) {
+            motor(elevatorNumber, value);
+            return;
+        }
+        if ((tokens[0].equalsIgnoreCase("s") || tokens[0].equalsIgnoreCase("scale"))
+                && tokens[1] != null && tokens[2] != null) {
+            scale(elevatorNumber, value);
+            return;
+        }
+        if ((tokens[0].equalsIgnoreCase("d") || tokens[0].equalsIgnoreCase("door"))
+                && tokens[1] != null && tokens[2] != null) {
+            door(elevatorNumber, value);
+            return;
+        }
+        if ((tokens[0].equalsIgnoreCase("w") || tokens[0].equalsIgnoreCase("where"))
+                && tokens[1] != null) {
+            where(elevatorNumber);
+            return;
+        }
+        System.err.println("Illegal command: " + input);
+    }
+
+    /**
+     * Executes a "k" ("snapshot") command submitted to the simulation: writes a snapshot
+     * of the building to the given file, e.g. "k noon.snap".
+     * @see elevator.Snapshot
+     */
+    private void snapshot(String input, StringTokenizer tokenizer) {
+        if (!tokenizer.hasMoreTokens()) {
+            System.err.println("Illegal command: " + input);
+            return;
+        }
+        String fileName = tokenizer.nextToken();
+        try {
+            Snapshot.save(building, fileName);
+            System.err.println("Snapshot of time step " + simulation.getTick() + " written to " + fileName);
+        } catch (IOException e) {
+            System.err.println("Snapshot: Cannot write " + fileName + ": " + e.getMessage());
+        }
+    }
+
     /**
      * Executes a "m" ("motor") control command read from standard or socket input stream:
      * starts the elevator moving upwards or downwards, or stops the motor.
@@ -228,13 +331,9 @@ public class ElevatorIO extends Thread {
         }
         if (number == 0)
             for (int i = numberOfElevators - 1; i >= 0; i--)
-                synchronized (allElevators[i].motorLock) {
-                    allElevators[i].Setdir(val);
-                }
+                allElevators[i].Setdir(val);
         else
-            synchronized (allElevators[number - 1].motorLock) {
-                allElevators[number - 1].Setdir(val);
-            }
+            allElevators[number - 1].Setdir(val);
     }
 
     /**
@@ -278,13 +377,9 @@ public class ElevatorIO extends Thread {
         }
         if (number == 0)
             for (int i = 0; i < numberOfElevators; i++)
-                synchronized (allElevators[i].doorLock) {
-                    allElevators[i].Setdoor(val);
-                }
+                allElevators[i].Setdoor(val);
         else
-            synchronized (allElevators[number - 1].doorLock) {
-                allElevators[number - 1].Setdoor(val);
-            }
+            allElevators[number - 1].Setdoor(val);
     }
     // used by TCP and standard IO
 
@@ -315,6 +410,8 @@ public class ElevatorIO extends Thread {
      * used to control motor(s) such as Motor, Motors, Elevator and Elevators.
      * Called by an RMI servant that implements one of these interface.
      * Starts the elevator moving upwards or downwards, or stops the motor.
+     * The command is submitted to the simulation and takes effect at the beginning
+     * of the next time step.
      * @param number the integer number of the motor (elevator) to start moving ot
      * to stop
      * @param val the integer code of a motor command: "1" - start moving upwards,
@@ -327,15 +424,7 @@ public class ElevatorIO extends Thread {
             throw new IllegalParamException();
         if (val > Elevators.UP || val < Elevators.DOWN)
             throw new IllegalParamException();
-        if (number == 0)
-            for (int i = numberOfElevators - 1; i >= 0; i--)
-                synchronized (allElevators[i].motorLock) {
-                    allElevators[i].Setdir(val);
-                }
-        else
-            synchronized (allElevators[number - 1].motorLock) {
-                allElevators[number - 1].Setdir(val);
-            }
+        simulation.submit("m " + number + " " + val);
     }
     // used by RMI
 
@@ -344,6 +433,8 @@ public class ElevatorIO extends Thread {
      * used to control scale(s) such as Scale, Scales, Elevator and Elevators.
      * Called by an RMI servant that implements one of these interface.
      * Sets a given value to the elevator scale.
+     * The command is submitted to the simulation and takes effect at the beginning
+     * of the next time step.
      * @param number the integer number of the elevator whose scale to set
      * @param val the integer value to be set to the scale of the given elevator.
      * @throws IllegalParamException if number is not a legal elevator number
@@ -354,9 +445,7 @@ public class ElevatorIO extends Thread {
             throw new IllegalParamException();
         if (val > topFloor || val < 0)
             throw new IllegalParamException();
-        if (number == 0)
-            for (int i = 0; i < numberOfElevators; i++) allElevators[i].Setscalepos(val);
-        else allElevators[number - 1].Setscalepos(val);
+        simulation.submit("s " + number + " " + val);
     }
     // used by RMI
 
@@ -365,6 +454,8 @@ public class ElevatorIO extends Thread {
      * used to control door(s) such as Door, Doors, Elevator and Elevators.
      * Called by an RMI servant that implements one of these interface.
      * Starts/stops openning/closing the door.
+     * The command is submitted to the simulation and takes effect at the beginning
+     * of the next time step.
      * @param number the number of the elevator whose door to open/close
      * @param val the integer code of a door command: "1" - open, "-1" -close, "0" - stop
      * @throws IllegalParamException if number is not a legal elevator number
@@ -375,15 +466,7 @@ public class ElevatorIO extends Thread {
             throw new IllegalParamException();
         if (val > Elevators.OPEN || val < Elevators.CLOSE)
             throw new IllegalParamException();
-        if (number == 0)
-            for (int i = 0; i < numberOfElevators; i++)
-                synchronized (allElevators[i].doorLock) {
-                    allElevators[i].Setdoor(val);
-                }
-        else
-            synchronized (allElevators[number - 1].doorLock) {
-                allElevators[number - 1].Setdoor(val);
-            }
+        simulation.submit("d " + number + " " + val);
     }
     // used by RMI
 
@@ -406,6 +489,18 @@ public class ElevatorIO extends Thread {
     }
     // used by RMI
 
+    /**
+     * Executes a "t" ("warp") command accepted on the <code>GetAll</code> remote interface:
+     * sets the time-warp factor of the simulation.
+     * @param factor the factor the simulation time is sped up with, 0 - as fast as possible
+     * @throws IllegalParamException if the factor is negative
+     */
+    public void warpRMI(double factor) throws IllegalParamException {
+        if (factor < 0) throw new IllegalParamException();
+        simulation.getTimeWarp().setFactor(factor);
+    }
+    // used by RMI
+
     /**
      * Executes a sequence of "w" ("where") control commands on all elevators
      * accepted on an remote interface used to control motors such as Motors and Elevators.
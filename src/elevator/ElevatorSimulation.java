@@ -0,0 +1,373 @@
+package elevator;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Title:        Green Elevator
+ * Description:  Green Elevator, 2G1915
+ * Copyright:    Copyright (c) 2001
+ * Company:      IMIT/KTH
+ *
+ * @author Vlad Vlassov
+ * @version 1.0
+ */
+
+/**
+ * The simulation core of the Elevators application. Advances the state of the Model
+ * (motors and doors of all elevators) by one time step and prints current positions
+ * of moving elevators to the output stream (standard or socket).
+ * <p>The simulation does not depend on the GUI. It is clocked by a
+ * <code>SimulationClock</code> thread whose period is controlled by the
+ * <code>TimeWarp</code> of the simulation, i.e. by the velocity slider of the
+ * <code>ElevatorGUI</code> or the <code>-headless</code> period, and the time-warp factor.
+ * On each time step the simulation notifies its tick listeners (e.g. the GUI and
+ * position listeners of RMI controllers) with an action event.
+ * <p>A large fleet is advanced in parallel: the elevators are partitioned into chunks
+ * of <code>CHUNK</code> elevators which are advanced, and whose position lines are
+ * formatted, by the workers of a <code>ForkJoinPool</code>. The time step ends when
+ * all chunks are done; then the position lines are written to the output stream at once
+ * and the tick listeners are notified.
+ * <p>All inbound commands (control commands from the standard input, TCP sockets and
+ * Java RMI, and action commands of floor and inside buttons) are submitted to the
+ * simulation and executed by the clocking thread at the beginning of the next time step,
+ * so the outcome of a run depends on the time steps the commands arrive at only. This
+ * allows a run to be journaled by a <code>Recorder</code> and reproduced by a
+ * <code>Replayer</code>. For the same reason a <code>Snapshot</code> of the simulation
+ * is taken at the beginning of a time step, when the "k" command is executed.
+ * @author Vlad Vlassov, IMIT/KTH, Stockholm, Sweden
+ * @version 1.0
+ * @see elevator.SimulationClock
+ * @see elevator.ElevatorGraphics
+ * @see elevator.Recorder
+ * @see elevator.Replayer
+ */
+public class ElevatorSimulation {
+    // the building's configuration
+    int numberOfElevators;
+    private double step;
+    private boolean posOutput;
+    /**
+     * The number of elevators advanced by one task of a parallel time step = 64
+     */
+    public static final int CHUNK = 64;
+    // own
+    private FleetState fleet;
+    private boolean[] changed;
+    private ForkJoinPool pool;
+    private StringBuilder[] text;
+    private long tick = 0;
+    private Vector<ActionListener> tickListeners = new Vector<ActionListener>();
+    private ConcurrentLinkedQueue<String> inbox = new ConcurrentLinkedQueue<String>();
+    private volatile Thread waiter;
+    private ElevatorIO io;
+    private Recorder recorder;
+    private Replayer replayer;
+    private TimeWarp warp;
+    private Runnable catchUp;
+
+    /**
+     * Creates the simulation core for the state of the fleet of elevators
+     * (the model of elevators) of the given building.
+     * @param building the building whose Model to advance
+     * @param workers the number of worker threads used to advance a fleet larger
+     *        than one chunk, 1 - advance all elevators in the clocking thread
+     */
+    public ElevatorSimulation(Building building, int workers) {
+        this.fleet = building.getFleet();
+        numberOfElevators = fleet.size();
+        step = building.getStep();
+        posOutput = building.posOutput;
+        changed = new boolean[numberOfElevators];
+        int chunks = (numberOfElevators + CHUNK - 1) / CHUNK;
+        text = new StringBuilder[chunks];
+        for (int c = 0; c < chunks; c++) text[c] = new StringBuilder();
+        if (workers > 1 && chunks > 1) pool = new ForkJoinPool(Math.min(workers, chunks));
+        warp = new TimeWarp(this, Elevators.DefaultTickPeriod);
+    }
+
+    /**
+     * Advances the motor and the door of one elevator by one time step.
+     * @param number is the index of the elevator (0, 1, ...) to advance
+     * @return true if the elevator or its door has moved, false otherwise
+     */
+    public boolean step(int number) {
+        return fleet.step(number, step);
+    }
+
+    /**
+     * Performs one time step of the simulation for all elevators: advances
+     * every elevator, prints positions of the elevators that have moved and
+     * notifies the tick listeners.
+     * @see #hasChanged(int)
+     */
+    public void tick() {
+        applyCommands(tick);
+        int units = FleetState.toUnits(step);
+        if (pool == null) {
+            for (int c = 0; c < text.length; c++) stepChunk(c, units);
+        } else {
+            pool.invoke(new StepTask(0, text.length, units));
+        }
+        if (posOutput) {
+            StringBuilder lines = text[0];
+            for (int c = 1; c < text.length; c++) lines.append(text[c]);
+            if (lines.length() > 0) output().print(lines);
+        }
+        endOfTick();
+    }
+
+    /**
+     * Advances one chunk of elevators and formats position lines of the elevators
+     * that have moved.
+     */
+    private void stepChunk(int c, int units) {
+        StringBuilder lines = text[c];
+        lines.setLength(0);
+        int to = Math.min(numberOfElevators, (c + 1) * CHUNK);
+        for (int i = c * CHUNK; i < to; i++) {
+            changed[i] = fleet.step(i, units);
+            if (changed[i] && posOutput)
+                lines.append("f ").append(i + 1).append(' ').append(fleet.getPosition(i)).append(Elevators.EOL);
+        }
+    }
+
+    /**
+     * Advances a range of chunks of elevators, splitting the range between workers.
+     */
+    private class StepTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from, to, units;
+
+        StepTask(int from, int to, int units) {
+            this.from = from;
+            this.to = to;
+            this.units = units;
+        }
+
+        protected void compute() {
+            if (to - from == 1) {
+                stepChunk(from, units);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new StepTask(from, middle, units), new StepTask(middle, to, units));
+            }
+        }
+    }
+
+    /**
+     * Returns whether the given elevator has changed its state during the last time step.
+     * @param number is the index of the elevator (0, 1, ...)
+     * @return true if the elevator or its door has moved on the last time step
+     */
+    public boolean hasChanged(int number) {
+        return changed[number];
+    }
+
+    /**
+     * Returns the state of the fleet of elevators advanced by this simulation.
+     * @return the <code>FleetState</code> of the Model
+     */
+    public FleetState getFleet() {
+        return fleet;
+    }
+
+    /**
+     * Returns the rate of the simulation time against the wall-clock time.
+     * @return the <code>TimeWarp</code> of the simulation
+     */
+    public TimeWarp getTimeWarp() {
+        return warp;
+    }
+
+    /**
+     * Returns the number of time steps performed since the simulation has started.
+     * @return the simulation time in time steps
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Adds a listener to be notified with an action event after each time step.
+     * @param listener the <code>ActionListener</code> to be added
+     */
+    public void addTickListener(ActionListener listener) {
+        tickListeners.addElement(listener);
+    }
+
+    /**
+     * Removes a tick listener.
+     * @param listener the <code>ActionListener</code> to be removed
+     */
+    public void removeTickListener(ActionListener listener) {
+        tickListeners.removeElement(listener);
+    }
+
+    /**
+     * Submits a command to be executed at the beginning of the next time step.
+     * @param command a control command ("m", "s", "d" or "w") or an action command
+     * of a button ("b" or "p")
+     * @see elevator.ElevatorIO#execute(String)
+     */
+    public void submit(String command) {
+        inbox.add(command);
+        Thread thread = waiter;
+        if (thread != null) LockSupport.unpark(thread);
+    }
+
+    /**
+     * Returns whether there are submitted commands not executed yet.
+     */
+    boolean hasCommands() {
+        return !inbox.isEmpty();
+    }
+
+    /**
+     * Returns the output stream of the building (standard or socket).
+     */
+    java.io.PrintStream output() {
+        return (io != null) ? io.out : System.out;
+    }
+
+    /**
+     * Returns the movement step of an elevator, i.e. the precision of the model.
+     * @return the movement step in floor units per time step
+     */
+    public double getStep() {
+        return step;
+    }
+
+    /**
+     * Sets the IO thread that executes submitted commands.
+     */
+    void attach(ElevatorIO io) {
+        this.io = io;
+    }
+
+    /**
+     * Sets the recorder that journals the executed commands.
+     */
+    void setRecorder(Recorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Sets the replayer that submits the journaled commands.
+     */
+    void setReplayer(Replayer replayer) {
+        this.replayer = replayer;
+    }
+
+    /**
+     * Returns the replayer, if any.
+     */
+    Replayer getReplayer() {
+        return replayer;
+    }
+
+    /**
+     * Sets the clocking thread to be unparked when a command is submitted.
+     */
+    void wakeOnSubmit(Thread thread) {
+        waiter = thread;
+    }
+
+    /**
+     * Executes the commands submitted so far (and, in the replay mode, the journaled commands
+     * due at the given time step) in the order of submission. Called by the clocking thread.
+     * In the replay mode the application exits when the journal is exhausted and all elevators
+     * and doors have stopped.
+     * @param tick the current time step
+     */
+    void applyCommands(long tick) {
+        this.tick = tick;
+        fleet.setTime(tick);
+        if (replayer != null) replayer.feed(tick, this);
+        String command;
+        while ((command = inbox.poll()) != null) {
+            if (recorder != null) recorder.record(tick, command);
+            if (io != null) io.execute(command);
+        }
+        if (replayer != null && replayer.isDone() && fleet.isIdle()) replayer.finish(tick);
+    }
+
+    /**
+     * Sets the action that brings the state of all elevators up to the current
+     * simulation time. Used by the discrete-event clock, which advances an elevator
+     * on its own events only, so that a snapshot sees the current positions.
+     */
+    void setCatchUp(Runnable catchUp) {
+        this.catchUp = catchUp;
+    }
+
+    /**
+     * Writes the simulation time, the state of the fleet and the submitted commands
+     * not executed yet to a snapshot. Called by the clocking thread at the beginning
+     * of a time step.
+     * @param out the output of the snapshot
+     * @throws IOException if the snapshot cannot be written
+     * @see elevator.Snapshot
+     */
+    void writeState(DataOutput out) throws IOException {
+        if (catchUp != null) catchUp.run();
+        out.writeLong(tick);
+        fleet.writeState(out);
+        Object[] pending = inbox.toArray();
+        out.writeInt(pending.length);
+        for (int i = 0; i < pending.length; i++) out.writeUTF((String) pending[i]);
+    }
+
+    /**
+     * Reads the simulation time, the state of the fleet and the pending commands
+     * from a snapshot. The pending commands are executed at the beginning of
+     * the first time step. Must be called before the simulation starts.
+     * @param in the input of the snapshot
+     * @throws IOException if the snapshot cannot be read
+     */
+    void readState(DataInput in) throws IOException {
+        tick = in.readLong();
+        fleet.readState(in);
+        int pending = in.readInt();
+        for (int i = 0; i < pending; i++) inbox.add(in.readUTF());
+    }
+
+    /**
+     * Prints a current position of the given elevator to the output stream
+     * (standard or socket) unless the application has started with the "-nopos" option.
+     */
+    void publishPosition(int number) {
+        if (posOutput)
+            output().println("f " + (number + 1) + " " + fleet.getPosition(number));
+    }
+
+    /**
+     * Sets the simulation time to the given time step and notifies the tick listeners.
+     * Used by the discrete-event clock that jumps over time steps.
+     */
+    void advanceTo(long tick) {
+        this.tick = tick;
+        fireTick();
+    }
+
+    private void endOfTick() {
+        tick++;
+        fireTick();
+    }
+
+    private void fireTick() {
+        if (tickListeners.isEmpty()) return;
+        ActionEvent event = new ActionEvent(this, ActionEvent.ACTION_PERFORMED, "tick");
+        Object[] listeners = tickListeners.toArray();
+        for (int i = 0; i < listeners.length; i++)
+            ((ActionListener) listeners[i]).actionPerformed(event);
+    }
+}
@@ -2,6 +2,8 @@ package elevator;
 
 import elevator.controller.ElevatorController;
 
+import java.util.Arrays;
+
 /**
  * Title:        Green Elevator
  * Description:  Green Elevator, 2G1915
@@ -84,6 +86,81 @@ import elevator.controller.ElevatorController;
  * <tr><td><code>-precision value</code><td>Specifies the movement step of one elevator, i.e.
  * the precision of the model, in floor units per time step.
  * If not specified, defaults to some hard-coded value.</tr>
+ * <tr><td><code>-headless [period]</code><td>Run the simulation without GUI,
+ * clocked by a fixed time step of the given period in milliseconds
+ * (defaults to 255, 0 means as fast as possible). Buttons are not available,
+ * the elevators are controlled via standard input, TCP sockets and/or Java RMI.</tr>
+ * <tr><td><code>-events</code><td>Run the simulation without GUI in the discrete-event
+ * mode: the simulation time jumps from one event (an elevator reaches a floor, a door
+ * is completely open or closed) to the next one. Positions are printed on the events only.
+ * Implies <code>-headless</code>.</tr>
+ * <tr><td><code>-workers n</code><td>The number of worker threads that advance
+ * a fleet of more than 64 elevators in parallel on each time step.
+ * Defaults to the number of available processors.</tr>
+ * <tr><td><code>-record file</code><td>Journal every command executed by the simulation
+ * (control commands and action commands of buttons) with its time step to the given file.</tr>
+ * <tr><td><code>-replay file</code><td>Play back a journal written with <code>-record</code>
+ * without GUI as fast as possible and exit. Run with the same <code>-number</code>,
+ * <code>-top</code> and <code>-precision</code> (and <code>-events</code>) as the recorded
+ * run to reproduce its output. Implies <code>-headless 0</code>.</tr>
+ * <tr><td><code>-acceleration value</code><td>The maximum acceleration of a cabin in floor
+ * units per time step squared. If specified, a cabin speeds up to the movement step
+ * (see <code>-precision</code>) and slows down to a stop within this limit instead of
+ * starting and stopping instantly, so a controller has to stop the motor before the cabin
+ * reaches the floor.</tr>
+ * <tr><td><code>-jerk value</code><td>The maximum jerk of a cabin in floor units per time
+ * step cubed, i.e. how fast the acceleration changes. If not specified, the acceleration
+ * changes instantly. Used with <code>-acceleration</code>.</tr>
+ * <tr><td><code>-warp factor</code><td>The time-warp factor: the simulation runs
+ * <i>factor</i> times faster than the velocity slider (or the <code>-headless</code>
+ * period) shows, 0 means as fast as possible. Defaults to 1. Can be changed at run time
+ * with the "t" command or via Java RMI.</tr>
+ * <tr><td><code>-buildings n</code><td>Simulate <i>n</i> independent buildings
+ * with the same options in one JVM, each with its own clock and controller.
+ * Requires <code>-headless</code> and either <code>-tcp</code> (building <i>k</i>
+ * listens on the ports shifted by (<i>k</i> - 1)(|outPort - inPort| + 1)) or <code>-replay</code> (the journal of building <i>k</i> is the file name
+ * with "%d" replaced by <i>k</i>, or with ".<i>k</i>" appended). See
+ * <code>Building</code>.</tr>
+ * <tr><td><code>-restore file</code><td>Start from a snapshot written by the "k" command
+ * instead of an empty building: the simulation time, the positions, directions, doors and
+ * scales of all elevators, the pending commands and the queues of the controller are
+ * restored. Run with the same <code>-number</code>, <code>-top</code>,
+ * <code>-precision</code>, <code>-acceleration</code> and <code>-jerk</code> as the run the
+ * snapshot has been taken of. See <code>Snapshot</code>.</tr>
+ * <tr><td><code>-controller n</code><td>Run the state machines of the cars of the
+ * built-in controller on a scheduler of <i>n</i> shared threads, with the door timers as
+ * scheduled tasks, instead of one thread per car.</tr>
+ * <tr><td><code>-reassign ms</code><td>The period in milliseconds of the pass of the
+ * built-in controller that reassigns all hall calls not served yet to the elevators
+ * jointly, so a call moves to another elevator if the one it was given to has been
+ * delayed. Defaults to 1000, 0 turns reassignment off.</tr>
+ * <tr><td><code>-policy name</code><td>The dispatch policy of the built-in controller,
+ * which decides the elevator that takes a hall call and the order of the stops of each
+ * elevator: "eta" (the earliest estimated arrival, the default), "stops" (the fewest
+ * stops before the call), "nearest" (the nearest elevator and the nearest stop) or
+ * "rollout" (the least waiting in a look-ahead simulation of the elevators with the
+ * earliest estimated arrivals).
+ * <code>elevator.bench.PolicyBenchmark</code> compares them on the same traffic.</tr>
+ * <tr><td><code>-park floors</code><td>The home floors of the idle elevators of the
+ * built-in controller in the order of priority, separated by commas, e.g. "0,0,10". An
+ * elevator idle for 3 seconds goes to the nearest home floor not taken by another one.
+ * By default the shaft is split into one zone per elevator; "none" leaves the idle
+ * elevators where they stop. By default the idle elevators go where the controller
+ * predicts the calls at this time of the day, once it has seen enough of them.</tr>
+ * <tr><td><code>-demand file</code><td>Load the hall calls predicted by the built-in
+ * controller from the file at startup, and save them to the file every minute and at
+ * exit, so the prediction of the calls at each floor, direction and quarter of an hour
+ * of the day is kept between runs.</tr>
+ * <tr><td><code>-log file</code><td>Write the event log of the built-in controller to
+ * the file instead of the standard output. The log is written by a thread of its own,
+ * so the elevators do not wait for it.</tr>
+ * <tr><td><code>-debug</code><td>Add the debug events to the log of the built-in
+ * controller, e.g. the state and queues of every elevator on each button and the cost of
+ * each elevator for each hall call.</tr>
+ * <tr><td><code>-rollout ms</code><td>The time budget in milliseconds of the
+ * look-ahead simulations of the "rollout" policy for each hall call, run in parallel.
+ * A simulation not done within it is left out. Defaults to 10, 0 gives each call to
+ * the earliest estimated arrival without simulating.</tr>
  * </table> </center>
  * <p>
  * To control the application via standard input and/or a TCP socket input stream
@@ -112,6 +189,12 @@ import elevator.controller.ElevatorController;
  * <i>value</i> is the double value of the
  * elevators' velocity in "floor units"
  * per millisecond.</tr>
+ * <tr><td><code> t <i>factor</i><td>Set the time-warp factor, e.g. "t 100" runs the
+ * simulation a hundred times faster, "t 0" as fast as possible. In response,
+ * the application prints the new effective velocity "v <i>value</i>".</tr>
+ * <tr><td><code> k <i>file</i></code><td>Write a snapshot of the simulation to the
+ * given file at the beginning of the next time step. The application can be started
+ * from the snapshot with the <code>-restore</code> option.</tr>
  * </table> </center>
  * <p>
  * When an inside panel button or a floor button is pressed the application prints
@@ -193,13 +276,21 @@ import elevator.controller.ElevatorController;
 
 public class Elevators {
     /**
-     * Maximum possible number of elevators = 5
+     * Maximum possible number of elevators displayed by the GUI = 5
      */
     public final static int MaxNumberOfElevators = 5;
     /**
-     * Maximum possible number of the top floor = 6
+     * Maximum possible number of the top floor displayed by the GUI = 6
      */
     public final static int MaxTopFloor = 6;
+    /**
+     * Maximum possible number of elevators when running without GUI = 1000
+     */
+    public final static int MaxHeadlessNumberOfElevators = 1000;
+    /**
+     * Maximum possible number of the top floor when running without GUI = 1000
+     */
+    public final static int MaxHeadlessTopFloor = 1000;
     /**
      * Default number of elevators = 1
      */
@@ -262,6 +353,19 @@ public class Elevators {
     public static int numberOfFloors;
 
     protected Elevator[] allElevators;
+    /**
+     * The state of all elevators held in primitive arrays indexed by elevator.
+     */
+    protected FleetState fleet;
+    /**
+     * The simulation core that advances the state of the Model on each time step.
+     */
+    protected ElevatorSimulation simulation;
+    /**
+     * All simulated buildings. The Model and the simulation core above are those of the
+     * first building, which is shown by the GUI and controlled via Java RMI.
+     */
+    protected Building[] allBuildings;
     /**
      * A boolean option that indicates whether a TCP socket(s) must be open for for input/output.
      * Defaults to false. Set by "-tcp" command line option
@@ -314,6 +418,119 @@ public class Elevators {
      * A movement step of an elevator, i.e precision of the model. Defaults to 0.04
      */
     public static double step = (double) 0.04;
+    /**
+     * The maximum acceleration of a cabin in floors per time step squared. Defaults to 0,
+     * i.e. a cabin moves with the speed <code>step</code> as soon as the motor is started
+     * and stops instantly. Set by "-acceleration value" command line option
+     */
+    public static double acceleration = 0;
+    /**
+     * The maximum jerk of a cabin in floors per time step cubed. Defaults to 0, i.e.
+     * the acceleration changes instantly. Set by "-jerk value" command line option
+     */
+    public static double jerk = 0;
+    /**
+     * The time-warp factor, i.e. the rate of the simulation time against the wall-clock
+     * time on top of the velocity slider or the "-headless" period. Defaults to 1,
+     * 0 means "as fast as possible". Set by "-warp factor" command line option
+     */
+    protected static double warp = 1;
+    /**
+     * Default period of a time step in milliseconds when running without GUI = 255,
+     * i.e. the same as the initial delay of the Timer of the Elevators GUI.
+     */
+    public static final int DefaultTickPeriod = 255;
+    /**
+     * A boolean option that indicates whether the application runs without GUI.
+     * Defaults to false. Set by "-headless" command line option
+     */
+    protected static boolean headless = false;
+    /**
+     * The period of a time step in milliseconds when running without GUI. Defaults to
+     * 255. Can be changed with "-headless period" command line argument, 0 means
+     * "as fast as possible".
+     */
+    protected static int tickPeriod = DefaultTickPeriod;
+    /**
+     * A boolean option that indicates whether the simulation without GUI is clocked by
+     * discrete events rather than by fixed time steps. Defaults to false.
+     * Set by "-events" command line option which implies "-headless".
+     */
+    protected static boolean events = false;
+    /**
+     * The number of worker threads used to advance a large fleet of elevators in parallel.
+     * Defaults to the number of available processors. Can be changed with
+     * "-workers n" command line argument, 1 means no parallelism.
+     */
+    protected static int workers = Runtime.getRuntime().availableProcessors();
+    /**
+     * The name of the file to journal commands to. Defaults to null (no journal).
+     * Set by "-record file" command line option
+     */
+    protected static String recordFile = null;
+    /**
+     * The name of the journal file to play back. Defaults to null (no replay).
+     * Set by "-replay file" command line option which implies "-headless 0".
+     */
+    protected static String replayFile = null;
+    /**
+     * The number of independent buildings simulated in this JVM. Defaults to 1.
+     * Set by "-buildings n" command line option which requires "-headless" and
+     * "-tcp" or "-replay".
+     */
+    protected static int numberOfBuildings = 1;
+    /**
+     * The name of the snapshot file to restore the state of the simulation from.
+     * Defaults to null (start from an empty building). Set by "-restore file" command line option
+     */
+    protected static String restoreFile = null;
+    /**
+     * The controller started by <code>main</code>, included in snapshots of the first building
+     */
+    protected static ElevatorController controller;
+    /**
+     * The number of threads of the scheduler shared by the cars of the controller.
+     * Defaults to 0 (one thread per car). Set by "-controller n" command line option
+     */
+    public static int controllerThreads = 0;
+    /**
+     * The period in milliseconds of the reassignment of hall calls by the controller.
+     * Defaults to 1000, 0 means never. Set by "-reassign ms" command line option
+     */
+    public static int reassignPeriod = 1000;
+    /**
+     * The name of the dispatch policy of the controller, one of
+     * <code>ElevatorController.POLICIES</code>. Defaults to "eta". Set by "-policy name"
+     * command line option
+     */
+    public static String dispatchPolicy = ElevatorController.POLICIES[0];
+    /**
+     * The home floors of idle elevators separated by commas, "" for one zone per elevator
+     * (the default) or "none". Set by "-park floors" command line option
+     */
+    public static String parkFloors = "";
+    /**
+     * The file the controller keeps the predicted hall calls in between runs. Defaults to
+     * null (the prediction starts empty and is lost at exit). Set by "-demand file"
+     * command line option
+     */
+    public static String demandFile = null;
+    /**
+     * The file the controller writes its event log to. Defaults to null (the standard
+     * output). Set by "-log file" command line option
+     */
+    public static String logFile = null;
+    /**
+     * A boolean option that indicates whether the controller logs the state and queues of
+     * every elevator on each button and other debug events. Defaults to false.
+     * Set by "-debug" command line option
+     */
+    public static boolean debug = false;
+    /**
+     * The time budget in milliseconds of the look-ahead simulations of the "rollout"
+     * policy for a hall call. Defaults to 10. Set by "-rollout ms" command line option
+     */
+    public static int rolloutBudget = 10;
 
     /**
      * Creates an instance of <code>Elevators</code>, parses the input parameters,
@@ -324,17 +541,43 @@ public class Elevators {
     public Elevators(String[] args) {
         initOptions(args);
         numberOfFloors = topFloor + 1;
-        if (numberOfFloors > MaxTopFloor + 1) {
+        if (headless ? (numberOfElevators > MaxHeadlessNumberOfElevators || topFloor > MaxHeadlessTopFloor)
+                : (numberOfElevators > MaxNumberOfElevators || topFloor > MaxTopFloor)) {
             System.err.println("illegal parameters" + EOL + USAGE);
             System.exit(1);
         } else
             System.err.println("number of elevators = " + numberOfElevators + EOL +
                     "number of floors = " + numberOfFloors + EOL);
-        allElevators = new Elevator[numberOfElevators + 1];
-        for (int i = 0; i < numberOfElevators; i++) {
-            allElevators[i] = new Elevator(i + 1);
+        if (numberOfBuildings > 1 && (!headless || (!tcp && replayFile == null))) {
+            System.err.println("-buildings requires -headless and -tcp or -replay" + EOL + USAGE);
+            System.exit(1);
+        }
+        allBuildings = new Building[numberOfBuildings];
+        for (int b = 0; b < numberOfBuildings; b++) allBuildings[b] = new Building(b + 1, numberOfBuildings);
+        fleet = allBuildings[0].fleet;
+        allElevators = allBuildings[0].allElevators;
+        simulation = allBuildings[0].simulation;
+        if (headless) startHeadless();
+        else {
+            ElevatorGUI window1 = new ElevatorGUI("Elevator", this);
+        }
+    }
+
+    /**
+     * Starts all buildings without GUI. Each building other than the first one starts
+     * in a separate thread, as it may wait for its controller to connect.
+     * @see elevator.Building#start()
+     */
+    private void startHeadless() {
+        for (int b = numberOfBuildings - 1; b > 0; b--) {
+            final Building building = allBuildings[b];
+            new Thread("Building " + building.getNumber()) {
+                public void run() {
+                    building.start();
+                }
+            }.start();
         }
-        ElevatorGUI window1 = new ElevatorGUI("Elevator", this);
+        allBuildings[0].start();
     }
 
     /**
@@ -352,7 +595,25 @@ public class Elevators {
             "-rmiPort",
             "-rmi",
             "-nopos",
-            "-precision"
+            "-precision",
+            "-headless",
+            "-events",
+            "-workers",
+            "-record",
+            "-replay",
+            "-acceleration",
+            "-jerk",
+            "-warp",
+            "-buildings",
+            "-restore",
+            "-controller",
+            "-reassign",
+            "-policy",
+            "-park",
+            "-demand",
+            "-log",
+            "-debug",
+            "-rollout"
     };
     /**
      * Number of accepted command line options
@@ -362,9 +623,9 @@ public class Elevators {
      * The usage message to be printed on the -help request
      */
     public static final String USAGE =
-            "USAGE: java Elevators [-number numberOfElevators] [-top topFloor] [-tcp] [-tcpin portForInput] [-tcpout portForOutput] [-rmi] [-nopos] [-precision value]" + EOL +
-                    "max number of elevators is " + MaxNumberOfElevators + EOL +
-                    "max number of floors (including BV) is " + (MaxTopFloor + 1);
+            "USAGE: java Elevators [-number numberOfElevators] [-top topFloor] [-tcp] [-tcpin portForInput] [-tcpout portForOutput] [-rmi] [-nopos] [-precision value] [-headless [period]] [-events] [-workers n] [-record file] [-replay file] [-acceleration value] [-jerk value] [-warp factor] [-buildings n] [-restore file] [-controller n] [-reassign ms] [-policy name] [-park floors] [-demand file] [-log file] [-debug] [-rollout ms]" + EOL +
+                    "max number of elevators is " + MaxNumberOfElevators + " (" + MaxHeadlessNumberOfElevators + " headless)" + EOL +
+                    "max number of floors (including BV) is " + (MaxTopFloor + 1) + " (" + (MaxHeadlessTopFloor + 1) + " headless)";
 
     private void initOptions(String[] args) {
         int argc = args.length;
@@ -396,7 +657,7 @@ public class Elevators {
                                 System.err.println(USAGE);
                                 System.exit(0);
                             case 2: //-number numberOfElevators
-                                if (isInteger && number > 0 && number <= MaxNumberOfElevators) {
+                                if (isInteger && number > 0) { // the limit depends on -headless
                                     numberOfElevators = number;
                                     break;
                                 } else {
@@ -404,7 +665,7 @@ public class Elevators {
                                     System.exit(1);
                                 }
                             case 3: // -top topFloor
-                                if (isInteger && number <= MaxTopFloor && number >= 1) {
+                                if (isInteger && number >= 1) { // the limit depends on -headless
                                     topFloor = number;
                                     break;
                                 } else {
@@ -449,6 +710,148 @@ public class Elevators {
                                     System.err.println("illegal parameters" + EOL + USAGE);
                                     System.exit(1);
                                 }
+                                break;
+                            }
+                            case 12: { // -headless period (run without GUI, period of a time step in ms)
+                                headless = true;
+                                if (isInteger && number >= 0) tickPeriod = number;
+                                break;
+                            }
+                            case 13: { // -events (discrete-event simulation without GUI)
+                                headless = true;
+                                events = true;
+                                break;
+                            }
+                            case 14: { // -workers n (threads advancing a large fleet in parallel)
+                                if (isInteger && number > 0) workers = number;
+                                else {
+                                    System.err.println("illegal parameters" + EOL + USAGE);
+                                    System.exit(1);
+                                }
+                                break;
+                            }
+                            case 15: { // -record file (journal commands with their time steps)
+                                if (isString) recordFile = args[currentArg + 1];
+                                else {
+                                    System.err.println("illegal parameters" + EOL + USAGE);
+                                    System.exit(1);
+                                }
+                                break;
+                            }
+                            case 16: { // -replay file (play back a journal without GUI as fast as possible)
+                                if (isString) replayFile = args[currentArg + 1];
+                                else {
+                                    System.err.println("illegal parameters" + EOL + USAGE);
+                                    System.exit(1);
+                                }
+                                headless = true;
+                                tickPeriod = 0;
+                                break;
+                            }
+                            case 17: { // -acceleration value (max acceleration in floor per time step squared)
+                                if (isInteger && number > 0) acceleration = number;
+                                else if (isdouble && fnumber > 0.0) acceleration = fnumber;
+                                else {
+                                    System.err.println("illegal parameters" + EOL + USAGE);
+                                    System.exit(1);
+                                }
+                                break;
+                            }
+                            case 18: { // -jerk value (max jerk in floor per time step cubed)
+                                if (isInteger && number > 0) jerk = number;
+                                else if (isdouble && fnumber > 0.0) jerk = fnumber;
+                                else {
+                                    System.err.println("illegal parameters" + EOL + USAGE);
+                                    System.exit(1);
+                                }
+                                break;
+                            }
+                            case 19: { // -warp factor (rate of the simulation time, 0 - as fast as possible)
+                                if (isInteger && number >= 0) warp = number;
+                                else if (isdouble && fnumber >= 0.0) warp = fnumber;
+                                else {
+                                    System.err.println("illegal parameters" + EOL + USAGE);
+                                    System.exit(1);
+                                }
+                                break;
+                            }
+                            case 20: { // -buildings n (independent buildings in one JVM)
+                                if (isInteger && number > 0) numberOfBuildings = number;
+                                else {
+                                    System.err.println("illegal parameters" + EOL + USAGE);
+                                    System.exit(1);
+                                }
+                                break;
+                            }
+                            case 21: { // -restore file (start from a snapshot taken with the "k" command)
+                                if (isString) restoreFile = args[currentArg + 1];
+                                else {
+                                    System.err.println("illegal parameters" + EOL + USAGE);
+                                    System.exit(1);
+                                }
+                                break;
+                            }
+                            case 22: { // -controller n (cars of the controller share a scheduler of n threads)
+                                if (isInteger && number > 0) controllerThreads = number;
+                                else {
+                                    System.err.println("illegal parameters" + EOL + USAGE);
+                                    System.exit(1);
+                                }
+                                break;
+                            }
+                            case 23: { // -reassign ms (period of the reassignment of hall calls, 0 - never)
+                                if (isInteger && number >= 0) reassignPeriod = number;
+                                else {
+                                    System.err.println("illegal parameters" + EOL + USAGE);
+                                    System.exit(1);
+                                }
+                                break;
+                            }
+                            case 24: { // -policy name (dispatch policy of the controller)
+                                if (isString && Arrays.asList(ElevatorController.POLICIES).contains(args[currentArg + 1]))
+                                    dispatchPolicy = args[currentArg + 1];
+                                else {
+                                    System.err.println("illegal parameters" + EOL + USAGE);
+                                    System.exit(1);
+                                }
+                                break;
+                            }
+                            case 25: { // -park floors (home floors of idle elevators, "none" - no parking)
+                                if (isInteger && number >= 0 && number <= topFloor) parkFloors = "" + number;
+                                else if (isString && isFloorList(args[currentArg + 1])) parkFloors = args[currentArg + 1];
+                                else {
+                                    System.err.println("illegal parameters" + EOL + USAGE);
+                                    System.exit(1);
+                                }
+                                break;
+                            }
+                            case 26: { // -demand file (keep the predicted hall calls between runs)
+                                if (isString) demandFile = args[currentArg + 1];
+                                else {
+                                    System.err.println("illegal parameters" + EOL + USAGE);
+                                    System.exit(1);
+                                }
+                                break;
+                            }
+                            case 27: { // -log file (the event log of the controller)
+                                if (isString) logFile = args[currentArg + 1];
+                                else {
+                                    System.err.println("illegal parameters" + EOL + USAGE);
+                                    System.exit(1);
+                                }
+                                break;
+                            }
+                            case 28: { // -debug (log the queues of the controller on each button)
+                                debug = true;
+                                break;
+                            }
+                            case 29: { // -rollout ms (time budget of the look-ahead of the rollout policy)
+                                if (isInteger && number >= 0) rolloutBudget = number;
+                                else {
+                                    System.err.println("illegal parameters" + EOL + USAGE);
+                                    System.exit(1);
+                                }
+                                break;
                             }
                             default:
                                 ;
@@ -459,6 +862,22 @@ public class Elevators {
         }
     }
 
+    /**
+     * Tests the value of the "-park" option: "none" or floors separated by commas.
+     */
+    private static boolean isFloorList(String value) {
+        if (value.equals("none")) return true;
+        for (String floor : value.split(",")) {
+            try {
+                int f = Integer.parseInt(floor.trim());
+                if (f < 0 || f > topFloor) return false;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * The main entry to the application. Creates the <code>Elevators</code>
      * object that holds most of static global parameters and constants, as well as
@@ -467,7 +886,8 @@ public class Elevators {
      */
     public static void main(String[] args) {
         // Our controller thread, which reads and writes to the TCP socket to control the elevator
-        new Thread(new ElevatorController()).start();
+        controller = new ElevatorController();
+        new Thread(controller).start();
         // Blocking call, waiting for TCP connection with -tcp flag
         new Elevators(args);
     }
@@ -0,0 +1,243 @@
+package elevator;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Title:        Green Elevator
+ * Description:  Green Elevator, 2G1915
+ * Copyright:    Copyright (c) 2001
+ * Company:      IMIT/KTH
+ *
+ * @author Vlad Vlassov
+ * @version 1.0
+ */
+
+/**
+ * Clocks the <code>ElevatorSimulation</code> in the discrete-event mode (the "-events" option)
+ * when the Elevators application runs without GUI.
+ * <p>Instead of advancing every elevator on every time step, the clock keeps a priority
+ * queue of future events, one per elevator that is moving: the elevator reaches
+ * the next floor (or stops at the bottom or the top floor), the door becomes completely
+ * open or completely closed. The simulation time jumps straight to the next event and only
+ * the elevator of the event is advanced, by all the time steps at once. Idle and cruising
+ * elevators cost nothing between their events. With a <code>MotionProfile</code> the time
+ * a cabin reaches the next floor is computed from its <code>Trajectory</code>, and the
+ * ends of acceleration and deceleration are events too.
+ * <p>On each event the position of the elevator is printed in the same format
+ * ("f <i>n p</i>") as in the time-step mode and the tick listeners of the simulation are
+ * notified. The state of an elevator held in the <code>FleetState</code> is therefore
+ * updated at floor and door events only.
+ * <p>A control command (motor or door) that arrives from the standard input, a TCP
+ * socket or Java RMI is executed by the clock thread and reschedules the elevator at the
+ * current simulation time.
+ * With a non-zero period of the <code>TimeWarp</code> the simulation time follows the
+ * wall-clock time at the same rate as the time-step mode, otherwise the clock jumps to
+ * the next event immediately. When the rate changes, the simulation time continues from
+ * the current time at the new rate.
+ * @see elevator.SimulationClock
+ * @see elevator.FleetState
+ */
+public class EventClock extends Thread implements CommandListener, ActionListener {
+    private ElevatorSimulation simulation;
+    private TimeWarp warp;
+    private FleetState fleet;
+    private int size;
+    private int topFloor;
+    private double step;
+    private long period;
+    private volatile boolean running = true;
+    // simulation time of the last event and the wall-clock time it corresponds to
+    private long now = 0;
+    private long startNanos;
+    // per elevator: time of the last update, directions since then and version of the schedule
+    private long[] last;
+    private int[] motor;
+    private int[] door;
+    private int[] version;
+    private PriorityQueue<Event> events = new PriorityQueue<Event>();
+    private ConcurrentLinkedQueue<Integer> commands = new ConcurrentLinkedQueue<Integer>();
+
+    /**
+     * Creates a discrete-event clock for the given simulation.
+     * @param simulation the simulation to be clocked at the rate of its time warp
+     */
+    public EventClock(ElevatorSimulation simulation) {
+        super("EventClock");
+        this.simulation = simulation;
+        this.warp = simulation.getTimeWarp();
+        this.fleet = simulation.getFleet();
+        this.size = fleet.size();
+        this.topFloor = fleet.getTopFloor();
+        this.step = simulation.getStep();
+        last = new long[size];
+        motor = new int[size];
+        door = new int[size];
+        version = new int[size];
+        setDaemon(true);
+        fleet.setCommandListener(this);
+        simulation.wakeOnSubmit(this);
+        simulation.setCatchUp(new Runnable() {
+            public void run() {
+                for (int i = 0; i < size; i++) update(i);
+            }
+        });
+        warp.addChangeListener(this);
+    }
+
+    /**
+     * Invoked when the rate of the time warp has changed. Wakes up the clock thread.
+     */
+    public void actionPerformed(ActionEvent e) {
+        LockSupport.unpark(this);
+    }
+
+    /**
+     * Invoked when a control command has been applied to an elevator. The elevator
+     * is rescheduled by the clock thread.
+     * @param index the index of the elevator (0, 1, ...)
+     */
+    public void commandIssued(int index) {
+        commands.add(Integer.valueOf(index));
+        LockSupport.unpark(this);
+    }
+
+    /**
+     * Processes events and commands until the clock is halted. Commands submitted to the
+     * simulation are executed at the current simulation time after all events due at or before that time,
+     * so a replayed journal reproduces the recorded run.
+     */
+    public void run() {
+        // continue from the simulation time of a restored snapshot, if any
+        now = simulation.getTick();
+        period = warp.getPeriodNanos();
+        startNanos = System.nanoTime() - now * period;
+        for (int i = 0; i < size; i++) {
+            last[i] = now;
+            schedule(i);
+        }
+        Replayer replayer = simulation.getReplayer();
+        while (running) {
+            long rate = warp.getPeriodNanos();
+            if (rate != period) {
+                // continue from the current simulation time at the new rate
+                if (rate > 0) startNanos = System.nanoTime() - now * rate;
+                period = rate;
+            }
+            // the time of the next commands, if any
+            long at = Long.MAX_VALUE;
+            if (simulation.hasCommands()) at = (period > 0) ? Math.max(now, wallClockTime()) : now;
+            if (replayer != null) at = Math.min(at, Math.max(now, replayer.nextTick()));
+            Event next = events.peek();
+            if (next != null && next.version != version[next.index]) {
+                events.poll(); // rescheduled by a command
+                continue;
+            }
+            if (next != null && next.tick <= at) {
+                if (period > 0) {
+                    long delay = startNanos + next.tick * period - System.nanoTime();
+                    if (delay > 0) {
+                        LockSupport.parkNanos(this, delay);
+                        continue; // a command may have arrived
+                    }
+                }
+                events.poll();
+                now = Math.max(now, next.tick);
+                fleet.setTime(now);
+                update(next.index);
+                simulation.publishPosition(next.index);
+                schedule(next.index);
+                simulation.advanceTo(now);
+                continue;
+            }
+            if (at == Long.MAX_VALUE) {
+                if (replayer != null) simulation.applyCommands(now); // exits when idle
+                else LockSupport.park(this);
+                continue;
+            }
+            now = at;
+            simulation.applyCommands(now);
+            Integer command;
+            while ((command = commands.poll()) != null) {
+                int i = command.intValue();
+                update(i);
+                schedule(i);
+            }
+        }
+    }
+
+    /**
+     * Stops the clock.
+     */
+    public void halt() {
+        running = false;
+        LockSupport.unpark(this);
+    }
+
+    /**
+     * Returns the simulation time that corresponds to the current wall-clock time.
+     */
+    private long wallClockTime() {
+        return (System.nanoTime() - startNanos) / period;
+    }
+
+    /**
+     * Advances the elevator to the current simulation time with the directions it had
+     * since the last update.
+     */
+    private void update(int i) {
+        fleet.advance(i, now - last[i], motor[i], door[i], step);
+        last[i] = now;
+    }
+
+    /**
+     * Computes the time of the next event of the elevator with its current directions
+     * and puts the event to the queue. Previously scheduled events of the elevator become stale.
+     */
+    private void schedule(int i) {
+        version[i]++;
+        motor[i] = fleet.getMotorDirection(i);
+        door[i] = fleet.getDoorDirection(i);
+        long ticks = Long.MAX_VALUE;
+        Trajectory trajectory = fleet.getTrajectory(i);
+        if (trajectory != null) {
+            // the next floor or a change of the phase of the motion profile
+            ticks = trajectory.ticksToNextEvent(topFloor);
+        } else if (motor[i] != Elevators.STOP) {
+            double position = fleet.getPosition(i);
+            // the next floor boundary in the direction of movement
+            double target = (motor[i] == Elevators.UP) ?
+                    Math.min(Math.floor(position + 1e-9) + 1, topFloor) :
+                    Math.max(Math.ceil(position - 1e-9) - 1, 0);
+            ticks = Math.max(1, (long) Math.ceil(Math.abs(target - position) / step - 1e-9));
+        }
+        if (door[i] != Elevators.STOP) {
+            int stat = fleet.getDoorStatus(i);
+            long doorTicks = (door[i] == Elevators.OPEN) ? DoorStatus.OPEN4 - stat : stat - DoorStatus.CLOSED;
+            ticks = Math.min(ticks, Math.max(1, doorTicks));
+        }
+        if (ticks != Long.MAX_VALUE) events.add(new Event(now + ticks, i, version[i]));
+    }
+
+    /**
+     * A future event of one elevator.
+     */
+    private static class Event implements Comparable<Event> {
+        final long tick;
+        final int index;
+        final int version;
+
+        Event(long tick, int index, int version) {
+            this.tick = tick;
+            this.index = index;
+            this.version = version;
+        }
+
+        public int compareTo(Event other) {
+            return tick < other.tick ? -1 : (tick > other.tick ? 1 : index - other.index);
+        }
+    }
+}
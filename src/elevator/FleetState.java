@@ -0,0 +1,532 @@
+package elevator;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Title:        Green Elevator
+ * Description:  Green Elevator, 2G1915
+ * Copyright:    Copyright (c) 2001
+ * Company:      IMIT/KTH
+ *
+ * @author Vlad Vlassov
+ * @version 1.0
+ */
+
+/**
+ * Holds the state of all elevators of the Model (positions of cabins, directions of motors
+ * and doors, states of doors and values of scales) in primitive arrays indexed by
+ * the elevator index (0, 1, ...). The arrays are sized from the configuration
+ * (the number of elevators and the top floor) so that large banks of elevators can be
+ * simulated, and a time step of the whole fleet is a single loop over the arrays.
+ * <p>The position, the motor direction, the door direction and the door status of one
+ * elevator are packed into one <code>long</code> state word and updated with
+ * compare-and-set, so the animation time step, the TCP reader and RMI threads never
+ * block each other and always see a consistent state of an elevator.
+ * The position is kept in fixed point, in millionths of a floor (see <code>UNIT</code>),
+ * so that repeated time steps do not accumulate floating point error.
+ * <p>When a <code>MotionProfile</code> is set, cabins accelerate and decelerate within
+ * its limits: each cabin follows a <code>Trajectory</code> which is evaluated in closed
+ * form on each time step and the position in the state word is the rounded value of the
+ * trajectory. The motor direction in the state word is then the commanded direction;
+ * a cabin whose motor has been stopped keeps moving until it has decelerated. The
+ * trajectories are only accessed by the thread that clocks the simulation, which also
+ * executes the control commands.
+ * <p>Objects with the <code>Elevator</code> class are views of one elevator in
+ * this <code>FleetState</code> and are kept for the GUI and the I/O of the application.
+ * @author Vlad Vlassov, IMIT/KTH, Stockholm, Sweden
+ * @version 1.0
+ * @see elevator.Elevator
+ * @see elevator.MotionProfile
+ */
+public class FleetState {
+    /**
+     * The number of position units per floor (the position is kept in fixed point).
+     */
+    public static final int UNIT = 1000000;
+    // layout of a state word
+    private static final int MOTOR_SHIFT = 32;
+    private static final int DOOR_SHIFT = 34;
+    private static final int STATUS_SHIFT = 36;
+    private static final long POSITION_MASK = 0xFFFFFFFFL;
+    private static final long DIR_MASK = 0x3L;
+    private static final long STATUS_MASK = 0x7L;
+    // state of the fleet, one entry per elevator
+    private final AtomicLongArray state;
+    private final AtomicIntegerArray scalepos;
+    private final int size;
+    private final int topFloor;
+    private volatile CommandListener commandListener;
+    // motion under a profile, null if cabins move at a constant speed
+    private MotionProfile profile;
+    private Trajectory[] trajectories;
+    private long time = 0;
+
+    /**
+     * Constructs the state of a fleet of the given number of elevators. All cabins
+     * are at the bottom floor with closed doors, all scales show the bottom floor.
+     * @param numberOfElevators the number of elevators in the fleet
+     * @param topFloor the number of the top floor
+     */
+    public FleetState(int numberOfElevators, int topFloor) {
+        this.size = numberOfElevators;
+        this.topFloor = topFloor;
+        state = new AtomicLongArray(size);
+        scalepos = new AtomicIntegerArray(size);
+        for (int i = 0; i < size; i++)
+            state.set(i, pack(0, Elevators.STOP, Elevators.STOP, DoorStatus.CLOSED));
+    }
+
+    /**
+     * Returns the number of elevators in the fleet.
+     * @return the number of elevators
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of the top floor.
+     * @return the number of the top floor
+     */
+    public int getTopFloor() {
+        return topFloor;
+    }
+
+    /**
+     * Returns whether all motors and doors of the fleet have stopped.
+     * @return true if no elevator and no door is moving
+     */
+    public boolean isIdle() {
+        for (int i = 0; i < size; i++) {
+            long word = state.get(i);
+            if (motor(word) != Elevators.STOP || door(word) != Elevators.STOP) return false;
+            if (trajectories != null && trajectories[i].isMoving()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sets the limits of motion of the cabins. Must be called before the simulation starts.
+     * @param profile the <code>MotionProfile</code>, or null to move the cabins at
+     * a constant speed and stop them instantly
+     */
+    public void setMotionProfile(MotionProfile profile) {
+        this.profile = profile;
+        if (profile == null) {
+            trajectories = null;
+            return;
+        }
+        trajectories = new Trajectory[size];
+        for (int i = 0; i < size; i++) {
+            trajectories[i] = new Trajectory();
+            trajectories[i].rest(getPosition(i));
+        }
+    }
+
+    /**
+     * Returns the limits of motion of the cabins.
+     * @return the <code>MotionProfile</code>, or null if cabins move at a constant speed
+     */
+    public MotionProfile getMotionProfile() {
+        return profile;
+    }
+
+    /**
+     * Returns the current trajectory of the cabin of an elevator.
+     * @param i the index of the elevator (0, 1, ...)
+     * @return the <code>Trajectory</code>, or null if no motion profile is set
+     */
+    public Trajectory getTrajectory(int i) {
+        return (trajectories == null) ? null : trajectories[i];
+    }
+
+    /**
+     * Converts a position or a movement step in floor units to position units.
+     * @param f the value in floor units
+     * @return the value in position units (millionths of a floor)
+     */
+    public static int toUnits(double f) {
+        return (int) Math.round(f * UNIT);
+    }
+
+    /**
+     * Packs the state of one elevator into a state word.
+     */
+    static long pack(int position, int motor, int door, int status) {
+        return (position & POSITION_MASK)
+                | ((long) (motor + 1) & DIR_MASK) << MOTOR_SHIFT
+                | ((long) (door + 1) & DIR_MASK) << DOOR_SHIFT
+                | ((long) status & STATUS_MASK) << STATUS_SHIFT;
+    }
+
+    static int position(long word) {
+        return (int) (word & POSITION_MASK);
+    }
+
+    static int motor(long word) {
+        return (int) ((word >>> MOTOR_SHIFT) & DIR_MASK) - 1;
+    }
+
+    static int door(long word) {
+        return (int) ((word >>> DOOR_SHIFT) & DIR_MASK) - 1;
+    }
+
+    static int status(long word) {
+        return (int) ((word >>> STATUS_SHIFT) & STATUS_MASK);
+    }
+
+    /**
+     * Advances the motor and the door of one elevator by one time step.
+     * A still elevator costs one read of its state word.
+     * @param i the index of the elevator (0, 1, ...)
+     * @param step the movement step of the elevator in floor units
+     * @return true if the elevator or its door has moved, false otherwise
+     */
+    public boolean step(int i, double step) {
+        return step(i, toUnits(step));
+    }
+
+    /**
+     * Advances the motor and the door of one elevator by one time step.
+     * @param i the index of the elevator (0, 1, ...)
+     * @param step the movement step of the elevator in position units
+     * @return true if the elevator or its door has moved, false otherwise
+     * @see #toUnits(double)
+     */
+    public boolean step(int i, int step) {
+        if (trajectories != null) return stepTrajectory(i);
+        int top = topFloor * UNIT;
+        while (true) {
+            long word = state.get(i);
+            int dir = motor(word), doordir = door(word);
+            if (dir == Elevators.STOP && doordir == Elevators.STOP) return false;
+            int position = position(word), stat = status(word);
+            if (dir != Elevators.STOP) {
+                position += dir * step;
+                //contol position;
+                if (position < 0) {
+                    dir = Elevators.STOP;
+                    position = 0;
+                }
+                if (position > top) {
+                    dir = Elevators.STOP;
+                    position = top;
+                }
+            }
+            if (doordir != Elevators.STOP) {
+                //contol door;
+                if (stat == DoorStatus.CLOSED && doordir == Elevators.CLOSE) doordir = Elevators.STOP;
+                if (stat == DoorStatus.OPEN4 && doordir == Elevators.OPEN) doordir = Elevators.STOP;
+                stat += doordir;
+            }
+            if (state.compareAndSet(i, word, pack(position, dir, doordir, stat)))
+                return dir != Elevators.STOP || doordir != Elevators.STOP;
+        }
+    }
+
+    /**
+     * Advances one elevator by the given number of time steps at once, assuming
+     * that the motor and the door have been moving in the given directions
+     * during these steps. Stops the motor at the bottom and the top floor and
+     * the door when it is completely open or closed, unless the direction has
+     * been changed by a command in the meantime. With a motion profile the cabin
+     * is moved to its position on the trajectory at the current simulation time.
+     * @param i the index of the elevator (0, 1, ...)
+     * @param ticks the number of time steps
+     * @param motor the direction of the motor during the time steps
+     * @param door the direction of the door during the time steps
+     * @param step the movement step of the elevator in floor units
+     * @see #setTime(long)
+     */
+    public void advance(int i, long ticks, int motor, int door, double step) {
+        Trajectory trajectory = getTrajectory(i);
+        boolean moving = (trajectory != null) ? trajectory.isMoving() : motor != Elevators.STOP;
+        if (ticks <= 0 || (!moving && door == Elevators.STOP)) return;
+        long top = (long) topFloor * UNIT;
+        long target = 0;
+        if (trajectory != null && moving) target = follow(trajectory, time);
+        while (true) {
+            long word = state.get(i);
+            int dir = motor(word), doordir = door(word);
+            long position;
+            if (trajectory != null) {
+                position = moving ? target : position(word);
+                if (moving && !trajectory.isMoving() && (target == 0 || target == top)) dir = Elevators.STOP;
+            } else {
+                position = position(word) + motor * toUnits(step) * ticks;
+                if (position <= 0) {
+                    position = 0;
+                    if (dir == motor) dir = Elevators.STOP;
+                }
+                if (position >= top) {
+                    position = top;
+                    if (dir == motor) dir = Elevators.STOP;
+                }
+            }
+            long stat = status(word) + door * ticks;
+            if (stat <= DoorStatus.CLOSED) {
+                stat = DoorStatus.CLOSED;
+                if (doordir == door) doordir = Elevators.STOP;
+            }
+            if (stat >= DoorStatus.OPEN4) {
+                stat = DoorStatus.OPEN4;
+                if (doordir == door) doordir = Elevators.STOP;
+            }
+            if (state.compareAndSet(i, word, pack((int) position, dir, doordir, (int) stat))) return;
+        }
+    }
+
+    /**
+     * Advances the cabin of one elevator along its trajectory and the door by one time step.
+     * @return true if the elevator or its door has moved, false otherwise
+     */
+    private boolean stepTrajectory(int i) {
+        Trajectory trajectory = trajectories[i];
+        boolean moving = trajectory.isMoving();
+        long target = moving ? follow(trajectory, trajectory.getTime() + 1) : 0;
+        boolean bounded = moving && !trajectory.isMoving() && (target == 0 || target == (long) topFloor * UNIT);
+        while (true) {
+            long word = state.get(i);
+            int dir = motor(word), doordir = door(word);
+            if (!moving && doordir == Elevators.STOP) return false;
+            int position = moving ? (int) target : position(word), stat = status(word);
+            if (bounded) dir = Elevators.STOP;
+            if (doordir != Elevators.STOP) {
+                //contol door;
+                if (stat == DoorStatus.CLOSED && doordir == Elevators.CLOSE) doordir = Elevators.STOP;
+                if (stat == DoorStatus.OPEN4 && doordir == Elevators.OPEN) doordir = Elevators.STOP;
+                stat += doordir;
+            }
+            if (state.compareAndSet(i, word, pack(position, dir, doordir, stat)))
+                return moving || doordir != Elevators.STOP;
+        }
+    }
+
+    /**
+     * Advances a trajectory to the given time and returns the position in position units.
+     * Stops the cabin instantly at the bottom and the top floor.
+     */
+    private long follow(Trajectory trajectory, long tick) {
+        trajectory.advanceTo(tick);
+        double f = trajectory.position();
+        if (f < 0 || f > topFloor) {
+            f = Math.max(0, Math.min(topFloor, f));
+            trajectory.rest(f);
+        }
+        return toUnits(f);
+    }
+
+    /**
+     * Sets the current simulation time, the time step at which control commands
+     * are executed. Used to start new trajectories of cabins at the right time when
+     * a motion profile is set.
+     * @param tick the current time step
+     */
+    public void setTime(long tick) {
+        time = tick;
+    }
+
+    /**
+     * Writes the state of all elevators (state words, scales and trajectories) and
+     * the simulation time to a snapshot. Called by the clocking thread.
+     * @param out the output of the snapshot
+     * @throws IOException if the snapshot cannot be written
+     * @see elevator.Snapshot
+     */
+    void writeState(DataOutput out) throws IOException {
+        out.writeLong(time);
+        for (int i = 0; i < size; i++) {
+            out.writeLong(state.get(i));
+            out.writeInt(scalepos.get(i));
+        }
+        out.writeBoolean(trajectories != null);
+        if (trajectories != null)
+            for (int i = 0; i < size; i++) trajectories[i].writeState(out);
+    }
+
+    /**
+     * Reads the state of all elevators and the simulation time from a snapshot
+     * taken of a fleet of the same size and with the same motion profile.
+     * Must be called before the simulation starts.
+     * @param in the input of the snapshot
+     * @throws IOException if the snapshot cannot be read
+     */
+    void readState(DataInput in) throws IOException {
+        time = in.readLong();
+        for (int i = 0; i < size; i++) {
+            state.set(i, in.readLong());
+            scalepos.set(i, in.readInt());
+        }
+        if (in.readBoolean() != (trajectories != null))
+            throw new IOException("The snapshot has been taken with another motion profile");
+        if (trajectories != null)
+            for (int i = 0; i < size; i++) trajectories[i].readState(in);
+    }
+
+    /**
+     * Sets the listener to be notified when a command sets the direction of a motor
+     * or a door. Used by the discrete-event clock to reschedule the elevator.
+     * @param listener the <code>CommandListener</code>, or null to remove the listener
+     */
+    public void setCommandListener(CommandListener listener) {
+        commandListener = listener;
+    }
+
+    /**
+     * Advances all elevators of the fleet by one time step.
+     * @param step the movement step of an elevator in floor units
+     * @param changed the array to be filled with flags indicating whether
+     *        the elevator or its door has moved
+     * @return the number of elevators that have moved
+     */
+    public int stepAll(double step, boolean[] changed) {
+        int units = toUnits(step);
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (changed[i] = step(i, units)) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Sets position of the elevator cabin to the specified double value.
+     * @param i the index of the elevator (0, 1, ...)
+     * @param f float position to be set.
+     */
+    public void setPosition(int i, double f) {
+        if (f < 0) {
+            System.err.println("In Setpos: Position out of range = " + f);
+            f = 0;
+        } else if (f > topFloor) {
+            System.err.println("In Setpos: Position out of range = " + f);
+            f = topFloor;
+        }
+        int position = toUnits(f);
+        long word;
+        do {
+            word = state.get(i);
+        } while (!state.compareAndSet(i, word, pack(position, motor(word), door(word), status(word))));
+    }
+
+    /**
+     * Sets the state of the door to the specified state
+     *  (DoorStatus.OPEN1, ... DoorStatus.OPEN4, DoorStatus.CLOSED).
+     * @param i the index of the elevator (0, 1, ...)
+     * @param s the integer state code to be set.
+     */
+    public void setDoorStatus(int i, int s) {
+        if (s < DoorStatus.CLOSED) {
+            System.err.println("In Setdoorstat: Doorstatus out of range = " + s);
+            s = DoorStatus.CLOSED;
+        } else if (s > DoorStatus.OPEN4) {
+            System.err.println("In Setdoorstat: Doorstatus out of range = " + s);
+            s = DoorStatus.OPEN4;
+        }
+        long word;
+        do {
+            word = state.get(i);
+        } while (!state.compareAndSet(i, word, pack(position(word), motor(word), door(word), s)));
+    }
+
+    /**
+     * Sets the direction of the motor to the specified direction,
+     * e.g. moving downwards (-1), moving upwards (1), none = stopped (0).
+     * @param i the index of the elevator (0, 1, ...)
+     * @param d an integer code of the direction to be set.
+     */
+    public void setMotorDirection(int i, int d) {
+        if (d < -1 || d > 1) {
+            System.err.println("In Setdir: Direction out of range = " + d);
+            d = 0;
+        }
+        long word;
+        do {
+            word = state.get(i);
+        } while (!state.compareAndSet(i, word, pack(position(word), d, door(word), status(word))));
+        if (trajectories != null) trajectories[i].plan(profile, d * profile.getSpeed(), time);
+        CommandListener listener = commandListener;
+        if (listener != null) listener.commandIssued(i);
+    }
+
+    /**
+     * Sets the movement direction of the door to the specified direction, e.g. closing (-1),
+     * opening (1), still (0)
+     * @param i the index of the elevator (0, 1, ...)
+     * @param d the integer code of the direction to be set.
+     */
+    public void setDoorDirection(int i, int d) {
+        if (d < -1 || d > 1) {
+            System.err.println("In Setdoor: Direction out of range = " + d);
+            d = 0;
+        }
+        long word;
+        do {
+            word = state.get(i);
+        } while (!state.compareAndSet(i, word, pack(position(word), motor(word), d, status(word))));
+        CommandListener listener = commandListener;
+        if (listener != null) listener.commandIssued(i);
+    }
+
+    /**
+     * Sets the scale position to the specified value (level number).
+     * @param i the index of the elevator (0, 1, ...)
+     * @param s the integer position value to be set.
+     */
+    public void setScale(int i, int s) {
+        if (s < 0 || s > topFloor) {
+            System.err.println("In Setscale: Scalevalue out of range = " + s);
+        } else {
+            scalepos.set(i, s);
+        }
+    }
+
+    /**
+     * Returns the current position of the elevator cabin.
+     * @param i the index of the elevator (0, 1, ...)
+     * @return the current position of the cabin as a double value in "floor units".
+     */
+    public double getPosition(int i) {
+        return (double) position(state.get(i)) / UNIT;
+    }
+
+    /**
+     * Returns the current state of the door
+     *  (DoorStatus.OPEN1, ... DoorStatus.OPEN4, DoorStatus.CLOSED).
+     * @param i the index of the elevator (0, 1, ...)
+     * @return the integer code of the current state of the door.
+     */
+    public int getDoorStatus(int i) {
+        return status(state.get(i));
+    }
+
+    /**
+     * Returns the current direction of movement of the elevator cabin (motor).
+     * @param i the index of the elevator (0, 1, ...)
+     * @return the integer code of the cabin movement direction.
+     */
+    public int getMotorDirection(int i) {
+        return motor(state.get(i));
+    }
+
+    /**
+     * Returns the current direction of movement of the door.
+     * @param i the index of the elevator (0, 1, ...)
+     * @return the the integer code of the door movement direction.
+     */
+    public int getDoorDirection(int i) {
+        return door(state.get(i));
+    }
+
+    /**
+     * Returns the current position (level) of the elevator scale.
+     * @param i the index of the elevator (0, 1, ...)
+     * @return the the integer value of the current position of the elevator scale.
+     */
+    public int getScale(int i) {
+        return scalepos.get(i);
+    }
+}
@@ -0,0 +1,114 @@
+package elevator;
+
+/**
+ * Title:        Green Elevator
+ * Description:  Green Elevator, 2G1915
+ * Copyright:    Copyright (c) 2001
+ * Company:      IMIT/KTH
+ *
+ * @author Vlad Vlassov
+ * @version 1.0
+ */
+
+/**
+ * Limits of the motion of an elevator cabin: maximum speed, acceleration and jerk,
+ * all in floor units and time steps (floors per time step, per time step squared and
+ * per time step cubed). Set by the "-precision" (the maximum speed), "-acceleration" and
+ * "-jerk" command line options.
+ * <p>Without a motion profile (the default) a cabin moves at the maximum speed as soon
+ * as the motor is started and stops instantly. With a motion profile the cabin
+ * accelerates and decelerates along a <code>Trajectory</code> whose position is evaluated
+ * in closed form at any time step.
+ * <p>The profile also computes exact travel times, e.g. for estimated times of arrival.
+ * @see elevator.Trajectory
+ */
+public class MotionProfile {
+    private final double speed;
+    private final double acceleration;
+    private final double jerk;
+
+    /**
+     * Creates motion limits.
+     * @param speed the maximum speed in floors per time step
+     * @param acceleration the maximum acceleration in floors per time step squared,
+     * 0 - unlimited (the cabin reaches the speed and stops instantly)
+     * @param jerk the maximum jerk in floors per time step cubed, 0 - unlimited
+     * (the acceleration changes instantly)
+     */
+    public MotionProfile(double speed, double acceleration, double jerk) {
+        this.speed = speed;
+        this.acceleration = acceleration;
+        this.jerk = jerk;
+    }
+
+    /**
+     * Returns the maximum speed.
+     * @return the maximum speed in floors per time step
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Returns the maximum acceleration.
+     * @return the maximum acceleration in floors per time step squared, 0 if unlimited
+     */
+    public double getAcceleration() {
+        return acceleration;
+    }
+
+    /**
+     * Returns the maximum jerk.
+     * @return the maximum jerk in floors per time step cubed, 0 if unlimited
+     */
+    public double getJerk() {
+        return jerk;
+    }
+
+    /**
+     * Returns the time to change the speed from 0 to the given speed (or back) with
+     * the maximum acceleration and jerk.
+     * @param v the speed in floors per time step
+     * @return the time in time steps
+     */
+    public double rampTime(double v) {
+        if (acceleration == 0) return 0;
+        if (jerk == 0) return v / acceleration;
+        if (v >= acceleration * acceleration / jerk) return v / acceleration + acceleration / jerk;
+        return 2 * Math.sqrt(v / jerk);
+    }
+
+    /**
+     * Returns the time to travel the given distance from standstill to standstill.
+     * @param distance the distance in floors
+     * @return the travel time in time steps
+     */
+    public double travelTime(double distance) {
+        distance = Math.abs(distance);
+        if (distance == 0) return 0;
+        if (acceleration == 0) return distance / speed;
+        // a symmetric ramp up to v and down again covers v * rampTime(v)
+        double ramp = rampTime(speed);
+        if (distance >= speed * ramp) return distance / speed + ramp;
+        // the maximum speed is not reached: find the peak speed
+        double peak;
+        if (jerk == 0) {
+            peak = Math.sqrt(acceleration * distance);
+        } else {
+            double c = acceleration / jerk;
+            peak = (Math.sqrt(c * c + 4 * distance / acceleration) - c) * acceleration / 2;
+            if (peak < acceleration * c) peak = Math.pow(distance * Math.sqrt(jerk) / 2, 2.0 / 3.0);
+        }
+        return 2 * rampTime(peak);
+    }
+
+    /**
+     * Returns the distance needed to stop from the given speed.
+     * @param v the speed in floors per time step
+     * @return the stopping distance in floors
+     */
+    public double stoppingDistance(double v) {
+        v = Math.abs(v);
+        return v * rampTime(v) / 2;
+    }
+}
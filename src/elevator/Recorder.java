@@ -0,0 +1,62 @@
+package elevator;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Title:        Green Elevator
+ * Description:  Green Elevator, 2G1915
+ * Copyright:    Copyright (c) 2001
+ * Company:      IMIT/KTH
+ *
+ * @author Vlad Vlassov
+ * @version 1.0
+ */
+
+/**
+ * Journals every command executed by the simulation (control commands from the standard
+ * input, TCP sockets and Java RMI, and action commands of floor and inside buttons)
+ * together with the time step at which it has been executed. Created when the
+ * application starts with the "-record file" option.
+ * <p>The journal is a text file. The first line is a header
+ * "# elevators <i>n</i> top <i>f</i> precision <i>s</i> acceleration <i>a</i> jerk <i>j</i>", each of the following lines
+ * is "<i>tick command</i>", e.g. "1042 m 2 -1". The journal is played back with
+ * the "-replay file" option.
+ * @see elevator.Replayer
+ */
+public class Recorder {
+    private BufferedWriter writer;
+
+    /**
+     * Creates the journal file and writes the header.
+     * @param building the building whose commands are recorded
+     * @param fileName the name of the journal file
+     * @throws IOException if the file cannot be created
+     */
+    public Recorder(Building building, String fileName) throws IOException {
+        writer = new BufferedWriter(new FileWriter(fileName));
+        writer.write("# elevators " + building.numberOfElevators + " top " + building.topFloor +
+                " precision " + building.step + " acceleration " + building.acceleration +
+                " jerk " + building.jerk);
+        writer.newLine();
+        writer.flush();
+    }
+
+    /**
+     * Appends a command to the journal. The journal is flushed on every command
+     * so that it survives a crash of the application.
+     * @param tick the time step at which the command is executed
+     * @param command the command
+     */
+    public void record(long tick, String command) {
+        try {
+            writer.write(tick + " " + command);
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("Recorder: Cannot write the journal. See below.");
+            e.printStackTrace();
+        }
+    }
+}
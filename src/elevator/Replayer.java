@@ -0,0 +1,128 @@
+package elevator;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.StringTokenizer;
+
+/**
+ * Title:        Green Elevator
+ * Description:  Green Elevator, 2G1915
+ * Copyright:    Copyright (c) 2001
+ * Company:      IMIT/KTH
+ *
+ * @author Vlad Vlassov
+ * @version 1.0
+ */
+
+/**
+ * Plays back a journal written by the <code>Recorder</code>: submits each command to
+ * the simulation at the time step it has been recorded at. Created when the
+ * application starts with the "-replay file" option, which runs the simulation
+ * without GUI as fast as possible.
+ * <p>As commands are executed by the simulation at the beginning of a time step only,
+ * a replay with the same number of elevators, top floor and precision produces the same
+ * output (positions of elevators and action commands of buttons) as the recorded run.
+ * The building stops when all commands have been played back and all elevators
+ * and doors have stopped; the application exits when the last building stops.
+ * @see elevator.Recorder
+ */
+public class Replayer {
+    private long[] ticks;
+    private String[] commands;
+    private int next = 0;
+    private Building building;
+
+    /**
+     * Reads the journal.
+     * @param building the building to play the journal back in
+     * @param fileName the name of the journal file
+     * @throws IOException if the file cannot be read
+     */
+    public Replayer(Building building, String fileName) throws IOException {
+        this.building = building;
+        ArrayList<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(fileName));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) checkHeader(line);
+                else if (line.length() > 0) lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        ticks = new long[lines.size()];
+        commands = new String[lines.size()];
+        for (int i = 0; i < ticks.length; i++) {
+            String line = lines.get(i);
+            int space = line.indexOf(' ');
+            try {
+                ticks[i] = Long.parseLong(line.substring(0, space));
+            } catch (RuntimeException e) {
+                throw new IOException("Illegal journal line: " + line);
+            }
+            commands[i] = line.substring(space + 1);
+        }
+    }
+
+    /**
+     * Warns if the journal has been recorded with other parameters than the current ones.
+     */
+    private void checkHeader(String header) {
+        StringTokenizer tokenizer = new StringTokenizer(header.substring(1));
+        String parameters = "";
+        while (tokenizer.hasMoreTokens()) {
+            String name = tokenizer.nextToken();
+            if (!tokenizer.hasMoreTokens()) break;
+            String value = tokenizer.nextToken();
+            if (name.equals("elevators") && Integer.parseInt(value) != building.numberOfElevators
+                    || name.equals("top") && Integer.parseInt(value) != building.topFloor
+                    || name.equals("precision") && Double.parseDouble(value) != building.step
+                    || name.equals("acceleration") && Double.parseDouble(value) != building.acceleration
+                    || name.equals("jerk") && Double.parseDouble(value) != building.jerk)
+                parameters += " -" + (name.equals("elevators") ? "number" : name) + " " + value;
+        }
+        if (parameters.length() > 0)
+            System.err.println("Replayer: the journal has been recorded with" + parameters +
+                    ", the output will differ");
+    }
+
+    /**
+     * Returns the time step of the next command to be played back.
+     * @return the time step, or <code>Long.MAX_VALUE</code> if all commands have been played back
+     */
+    public long nextTick() {
+        return next < ticks.length ? ticks[next] : Long.MAX_VALUE;
+    }
+
+    /**
+     * Submits to the simulation all commands recorded at or before the given time step.
+     * @param tick the current time step
+     * @param simulation the simulation to submit the commands to
+     */
+    public void feed(long tick, ElevatorSimulation simulation) {
+        while (next < ticks.length && ticks[next] <= tick)
+            simulation.submit(commands[next++]);
+    }
+
+    /**
+     * Returns whether all commands have been played back.
+     * @return true if there are no more commands
+     */
+    public boolean isDone() {
+        return next >= ticks.length;
+    }
+
+    /**
+     * Ends the replay: flushes the output and stops the building.
+     * @param tick the time step at which the replay has ended
+     */
+    public void finish(long tick) {
+        building.getSimulation().output().flush();
+        System.err.println("Replay" + (Elevators.numberOfBuildings > 1 ? " of building " + building.getNumber() : "") +
+                " finished at time step " + tick + ", " + ticks.length + " commands");
+        building.stop();
+    }
+}
@@ -0,0 +1,115 @@
+package elevator;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Title:        Green Elevator
+ * Description:  Green Elevator, 2G1915
+ * Copyright:    Copyright (c) 2001
+ * Company:      IMIT/KTH
+ *
+ * @author Vlad Vlassov
+ * @version 1.0
+ */
+
+/**
+ * Clocks the <code>ElevatorSimulation</code> with a fixed time step in a separate thread.
+ * The period of the time step is taken from the <code>TimeWarp</code> of the simulation,
+ * which is changed by the velocity slider of the GUI and the time-warp factor.
+ * <p>The clock keeps a schedule of time steps in wall-clock time rather than sleeping
+ * a fixed delay after each step, so the rate of the simulation does not drift with
+ * the time spent in a step. If the clock falls behind the schedule (e.g. the machine is
+ * busy) it performs the missed time steps back-to-back, but never more than
+ * <code>MAX_CATCH_UP</code> steps, after which the schedule is reset.
+ * With a zero period the simulation runs as fast as possible.
+ * The clock listens for changes of the time warp and does not sleep the old
+ * period to the end.
+ * <p>A paused clock still executes commands submitted to the simulation (e.g. action
+ * commands of buttons) as soon as they arrive.
+ * @see elevator.ElevatorSimulation
+ */
+public class SimulationClock extends Thread implements ActionListener {
+    /**
+     * Maximum number of missed time steps performed back-to-back to catch up
+     * with the schedule.
+     */
+    public static final int MAX_CATCH_UP = 100;
+    private ElevatorSimulation simulation;
+    private TimeWarp warp;
+    private volatile boolean running = true;
+    private volatile boolean paused = false;
+
+    /**
+     * Creates a clock for the given simulation.
+     * @param simulation the simulation to be clocked at the rate of its time warp
+     */
+    public SimulationClock(ElevatorSimulation simulation) {
+        super("SimulationClock");
+        this.simulation = simulation;
+        this.warp = simulation.getTimeWarp();
+        setDaemon(true);
+        warp.addChangeListener(this);
+        simulation.wakeOnSubmit(this);
+    }
+
+    /**
+     * Performs time steps of the simulation on schedule until the clock is halted.
+     */
+    public void run() {
+        long next = System.nanoTime();
+        while (running) {
+            if (paused) {
+                Thread.interrupted(); // a change of the rate does not resume the clock
+                LockSupport.park(this);
+                simulation.applyCommands(simulation.getTick());
+                next = System.nanoTime();
+                continue;
+            }
+            simulation.tick();
+            long period = warp.getPeriodNanos();
+            if (period == 0) {
+                Thread.yield();
+                next = System.nanoTime();
+                continue;
+            }
+            next += period;
+            long delay = next - System.nanoTime();
+            if (delay > 0) {
+                try {
+                    sleep(delay / 1000000L, (int) (delay % 1000000L));
+                } catch (InterruptedException e) {
+                    next = System.nanoTime(); // the period has changed
+                }
+            } else if (-delay > MAX_CATCH_UP * period) {
+                next = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Invoked when the rate of the time warp has changed. Wakes up the clock so that
+     * it does not sleep the old period to the end.
+     */
+    public void actionPerformed(ActionEvent e) {
+        interrupt();
+    }
+
+    /**
+     * Pauses or resumes the clock. A paused clock performs no time steps.
+     * @param paused true to pause, false to resume
+     */
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+        if (!paused) LockSupport.unpark(this);
+    }
+
+    /**
+     * Stops the clock after the current time step.
+     */
+    public void halt() {
+        running = false;
+        LockSupport.unpark(this);
+    }
+}
@@ -0,0 +1,105 @@
+package elevator;
+
+import elevator.controller.ElevatorController;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Title:        Green Elevator
+ * Description:  Green Elevator, 2G1915
+ * Copyright:    Copyright (c) 2001
+ * Company:      IMIT/KTH
+ *
+ * @author Vlad Vlassov
+ * @version 1.0
+ */
+
+/**
+ * A binary snapshot of the full state of a building: the simulation time, the state word
+ * (position, motor and door directions, door status) and the scale of every elevator,
+ * the trajectories of cabins under a motion profile, the commands submitted to the
+ * simulation but not executed yet and, for the first building, the states and request
+ * queues of the built-in controller.
+ * <p>A snapshot is taken by the "k <i>file</i>" command, which is executed by the
+ * simulation at the beginning of a time step like any other command, and restored at
+ * startup with the "-restore file" option, so many runs can be forked from one moment
+ * of a busy scenario instead of replaying it from an empty building. The snapshot must
+ * be restored with the same number of elevators, top floor, precision and motion limits.
+ * <p>The format is a sequence of big-endian primitives (see <code>DataOutput</code>):
+ * the magic number and the version, the configuration, the simulation state and the
+ * controller state. A fleet of <i>n</i> elevators takes 12<i>n</i> bytes plus
+ * 176<i>n</i> bytes with a motion profile.
+ * @see elevator.ElevatorSimulation
+ */
+public class Snapshot {
+    /**
+     * The first four bytes of a snapshot file, "GESP".
+     */
+    public static final int MAGIC = 0x47455350;
+    /**
+     * The version of the snapshot format = 1
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Writes a snapshot of the given building to a file. Must be called by the thread
+     * that clocks the simulation of the building, at the beginning of a time step.
+     * @param building the building
+     * @param fileName the name of the snapshot file
+     * @throws IOException if the file cannot be written
+     */
+    public static void save(Building building, String fileName) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(building.numberOfElevators);
+            out.writeInt(building.topFloor);
+            out.writeDouble(building.step);
+            out.writeDouble(building.acceleration);
+            out.writeDouble(building.jerk);
+            building.getSimulation().writeState(out);
+            ElevatorController controller = (building.getNumber() == 1) ? Elevators.controller : null;
+            out.writeBoolean(controller != null);
+            if (controller != null) controller.writeState(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Restores the state of the given building from a snapshot file. Must be called
+     * before the simulation of the building and the controller start.
+     * @param building the building
+     * @param fileName the name of the snapshot file
+     * @throws IOException if the file cannot be read or has been taken with another
+     * configuration
+     */
+    public static void restore(Building building, String fileName) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+        try {
+            if (in.readInt() != MAGIC) throw new IOException(fileName + " is not a snapshot");
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unknown snapshot version " + version);
+            int elevators = in.readInt(), top = in.readInt();
+            double step = in.readDouble(), acceleration = in.readDouble(), jerk = in.readDouble();
+            if (elevators != building.numberOfElevators || top != building.topFloor || step != building.step
+                    || acceleration != building.acceleration || jerk != building.jerk)
+                throw new IOException("The snapshot has been taken with -number " + elevators + " -top " + top +
+                        " -precision " + step + " -acceleration " + acceleration + " -jerk " + jerk);
+            building.getSimulation().readState(in);
+            if (in.readBoolean()) {
+                ElevatorController controller = (building.getNumber() == 1) ? Elevators.controller : null;
+                if (controller != null) controller.readState(in);
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
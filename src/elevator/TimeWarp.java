@@ -0,0 +1,143 @@
+package elevator;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Vector;
+
+/**
+ * Title:        Green Elevator
+ * Description:  Green Elevator, 2G1915
+ * Copyright:    Copyright (c) 2001
+ * Company:      IMIT/KTH
+ *
+ * @author Vlad Vlassov
+ * @version 1.0
+ */
+
+/**
+ * The rate of the simulation time against the wall-clock time. The period of a time
+ * step is the base period (set by the velocity slider of the GUI or by the
+ * "-headless period" option) divided by the time-warp factor (set by the
+ * "-warp factor" option, the "t <i>factor</i>" command or the <code>setTimeWarp</code>
+ * RMI call). A warp factor of 100 runs the simulation a hundred times faster than the
+ * slider shows; a factor of 0 runs it as fast as possible.
+ * <p>The clocks of the simulation read the period from the time warp on each time step
+ * and are woken when it changes, so the rate can be changed at any time from any thread.
+ * On each change the change listeners receive an action event with the action command
+ * "v <i>velocity</i>", where the velocity is the effective velocity of elevators in
+ * floor units per millisecond.
+ * @see elevator.SimulationClock
+ * @see elevator.EventClock
+ */
+public class TimeWarp {
+    private ElevatorSimulation simulation;
+    private volatile int basePeriod;
+    private volatile double factor = 1;
+    private Vector<ActionListener> listeners = new Vector<ActionListener>();
+    // the last sample of the simulation time used to measure the velocity
+    private long sampleTick = 0;
+    private long sampleNanos = System.nanoTime();
+
+    /**
+     * Creates a time warp of the given simulation.
+     * @param simulation the simulation whose rate is measured when it runs as fast as possible
+     * @param basePeriod the period of a time step in milliseconds at the warp factor 1
+     */
+    public TimeWarp(ElevatorSimulation simulation, int basePeriod) {
+        this.simulation = simulation;
+        this.basePeriod = basePeriod;
+    }
+
+    /**
+     * Sets the period of a time step at the warp factor 1, e.g. when the velocity slider
+     * has been moved.
+     * @param period the period in milliseconds, 0 - as fast as possible
+     */
+    public void setBasePeriod(int period) {
+        basePeriod = period;
+        fireChange();
+    }
+
+    /**
+     * Returns the period of a time step at the warp factor 1.
+     * @return the period in milliseconds
+     */
+    public int getBasePeriod() {
+        return basePeriod;
+    }
+
+    /**
+     * Sets the time-warp factor.
+     * @param factor the factor the simulation time is sped up with, 0 - as fast as possible
+     */
+    public void setFactor(double factor) {
+        if (factor < 0) {
+            System.err.println("In setFactor: Time warp out of range = " + factor);
+            return;
+        }
+        this.factor = factor;
+        fireChange();
+    }
+
+    /**
+     * Returns the time-warp factor.
+     * @return the factor, 0 if the simulation runs as fast as possible
+     */
+    public double getFactor() {
+        return factor;
+    }
+
+    /**
+     * Returns the effective period of a time step.
+     * @return the period in nanoseconds, 0 if the simulation runs as fast as possible
+     */
+    public long getPeriodNanos() {
+        double f = factor;
+        int base = basePeriod;
+        if (f == 0 || base == 0) return 0;
+        return Math.max(1, Math.round(base * 1000000.0 / f));
+    }
+
+    /**
+     * Returns the effective velocity of elevators. When the simulation runs as fast as
+     * possible, the velocity is measured since the previous call.
+     * @return the velocity in floor units per millisecond
+     */
+    public double getVelocity() {
+        long period = getPeriodNanos();
+        if (period > 0) return simulation.getStep() * 1000000.0 / period;
+        synchronized (this) {
+            long tick = simulation.getTick(), nanos = System.nanoTime();
+            double velocity = (nanos > sampleNanos) ?
+                    simulation.getStep() * (tick - sampleTick) * 1000000.0 / (nanos - sampleNanos) : 0;
+            sampleTick = tick;
+            sampleNanos = nanos;
+            return velocity;
+        }
+    }
+
+    /**
+     * Adds a listener to be notified with an action event "v <i>velocity</i>" when
+     * the rate of the simulation has changed.
+     * @param listener the <code>ActionListener</code> to be added
+     */
+    public void addChangeListener(ActionListener listener) {
+        listeners.addElement(listener);
+    }
+
+    /**
+     * Removes a change listener.
+     * @param listener the <code>ActionListener</code> to be removed
+     */
+    public void removeChangeListener(ActionListener listener) {
+        listeners.removeElement(listener);
+    }
+
+    private void fireChange() {
+        if (listeners.isEmpty()) return;
+        ActionEvent event = new ActionEvent(this, ActionEvent.ACTION_PERFORMED, "v " + getVelocity());
+        Object[] copy = listeners.toArray();
+        for (int i = 0; i < copy.length; i++)
+            ((ActionListener) copy[i]).actionPerformed(event);
+    }
+}
@@ -0,0 +1,289 @@
+package elevator;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Title:        Green Elevator
+ * Description:  Green Elevator, 2G1915
+ * Copyright:    Copyright (c) 2001
+ * Company:      IMIT/KTH
+ *
+ * @author Vlad Vlassov
+ * @version 1.0
+ */
+
+/**
+ * The current trajectory segment of one elevator cabin moving under a
+ * <code>MotionProfile</code>. A segment starts when the motor is given a command and
+ * changes the velocity of the cabin to the commanded one (the maximum speed upwards or
+ * downwards, or zero) within the limits of acceleration and jerk: the jerk ramps the
+ * acceleration up, the acceleration is held, the jerk ramps it down again, after which
+ * the cabin cruises at the commanded velocity (or stands still).
+ * <p>Each of these phases has a constant jerk, so the position of the cabin at any
+ * time of the segment is evaluated in closed form from the state at the beginning of
+ * the phase; advancing the cabin by any number of time steps costs the same and
+ * accumulates no error. For the discrete-event clock the trajectory also computes
+ * the time the cabin reaches the next floor.
+ * @see elevator.MotionProfile
+ */
+public class Trajectory {
+    // phases: 0 - jerk ramps the acceleration, 1 - constant acceleration,
+    // 2 - jerk ramps the acceleration back to 0, 3 - constant velocity
+    private static final int PHASES = 4;
+    // start time (since the start of the segment), position, velocity, acceleration
+    // and jerk of each phase
+    private final double[] start = new double[PHASES];
+    private final double[] p = new double[PHASES];
+    private final double[] v = new double[PHASES];
+    private final double[] a = new double[PHASES];
+    private final double[] j = new double[PHASES];
+    // the time step the segment has started at and the current time step
+    private long origin = 0;
+    private long time = 0;
+
+    /**
+     * Creates a trajectory of a cabin standing still at the bottom floor.
+     */
+    public Trajectory() {
+        rest(0);
+    }
+
+    /**
+     * Starts a new segment at the given time which changes the velocity of the cabin
+     * to the given one as fast as the motion profile allows.
+     * @param profile the limits of the motion
+     * @param target the velocity to reach in floors per time step
+     * @param tick the time step to start the segment at
+     */
+    public void plan(MotionProfile profile, double target, long tick) {
+        advanceTo(tick);
+        double p0 = position(), v0 = velocity(), a0 = acceleration();
+        double amax = profile.getAcceleration(), jmax = profile.getJerk();
+        double d, peak, t1, t2, t3;
+        if (jmax == 0) { // the acceleration changes instantly
+            d = (target >= v0) ? 1 : -1;
+            a0 = 0;
+            peak = amax;
+            t1 = t3 = 0;
+            t2 = Math.abs(target - v0) / amax;
+        } else {
+            // ramp the acceleration towards the target, mirrored to the positive direction
+            double free = v0 + a0 * Math.abs(a0) / (2 * jmax); // velocity if the ramp down starts now
+            d = (target >= free) ? 1 : -1;
+            double dv = d * (target - v0), a = d * a0;
+            double ramps = (2 * amax * amax - a * a) / (2 * jmax);
+            if (dv >= ramps) {
+                peak = amax;
+                t2 = (dv - ramps) / amax;
+            } else {
+                peak = Math.sqrt(Math.max(0, (2 * jmax * dv + a * a) / 2));
+                t2 = 0;
+            }
+            t1 = Math.max(0, (peak - a) / jmax);
+            t3 = peak / jmax;
+        }
+        origin = time;
+        start[0] = 0;
+        p[0] = p0;
+        v[0] = v0;
+        a[0] = a0;
+        j[0] = d * jmax;
+        propagate(1, t1, d * peak, 0);
+        propagate(2, t2, d * peak, -d * jmax);
+        propagate(3, t3, 0, 0);
+        v[3] = target;
+    }
+
+    /**
+     * Starts the next phase at the end of the previous one.
+     */
+    private void propagate(int k, double duration, double acceleration, double jerk) {
+        start[k] = start[k - 1] + duration;
+        p[k] = positionIn(k - 1, duration);
+        v[k] = velocityIn(k - 1, duration);
+        a[k] = acceleration;
+        j[k] = jerk;
+    }
+
+    /**
+     * Stops the cabin instantly at the given position (e.g. at the bottom or the top floor).
+     * @param position the position in floors
+     */
+    public void rest(double position) {
+        origin = time;
+        for (int k = 0; k < PHASES; k++) {
+            start[k] = 0;
+            p[k] = position;
+            v[k] = a[k] = j[k] = 0;
+        }
+    }
+
+    /**
+     * Writes the segment and the current time to a snapshot.
+     * @param out the output of the snapshot
+     * @throws IOException if the snapshot cannot be written
+     * @see elevator.Snapshot
+     */
+    void writeState(DataOutput out) throws IOException {
+        out.writeLong(origin);
+        out.writeLong(time);
+        for (int k = 0; k < PHASES; k++) {
+            out.writeDouble(start[k]);
+            out.writeDouble(p[k]);
+            out.writeDouble(v[k]);
+            out.writeDouble(a[k]);
+            out.writeDouble(j[k]);
+        }
+    }
+
+    /**
+     * Reads the segment and the current time from a snapshot.
+     * @param in the input of the snapshot
+     * @throws IOException if the snapshot cannot be read
+     */
+    void readState(DataInput in) throws IOException {
+        origin = in.readLong();
+        time = in.readLong();
+        for (int k = 0; k < PHASES; k++) {
+            start[k] = in.readDouble();
+            p[k] = in.readDouble();
+            v[k] = in.readDouble();
+            a[k] = in.readDouble();
+            j[k] = in.readDouble();
+        }
+    }
+
+    /**
+     * Advances the cabin to the given time step.
+     * @param tick the time step
+     */
+    public void advanceTo(long tick) {
+        time = tick;
+    }
+
+    /**
+     * Returns the time step the cabin has been advanced to.
+     * @return the current time step
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns whether the cabin is moving or will move without a new command.
+     * @return false if the cabin stands still for good
+     */
+    public boolean isMoving() {
+        return time - origin < start[3] || v[3] != 0;
+    }
+
+    /**
+     * Returns the current position of the cabin.
+     * @return the position in floors
+     */
+    public double position() {
+        return positionAt(time - origin);
+    }
+
+    /**
+     * Returns the current velocity of the cabin.
+     * @return the velocity in floors per time step
+     */
+    public double velocity() {
+        int k = phase(time - origin);
+        return velocityIn(k, time - origin - start[k]);
+    }
+
+    /**
+     * Returns the current acceleration of the cabin.
+     * @return the acceleration in floors per time step squared
+     */
+    public double acceleration() {
+        int k = phase(time - origin);
+        return a[k] + j[k] * (time - origin - start[k]);
+    }
+
+    /**
+     * Returns the position of the cabin at the given time of the segment.
+     * @param t the time since the start of the segment in time steps
+     * @return the position in floors
+     */
+    public double positionAt(double t) {
+        int k = phase(t);
+        return positionIn(k, t - start[k]);
+    }
+
+    private int phase(double t) {
+        int k = PHASES - 1;
+        while (k > 0 && t < start[k]) k--;
+        return k;
+    }
+
+    private double positionIn(int k, double dt) {
+        return p[k] + dt * (v[k] + dt * (a[k] / 2 + dt * j[k] / 6));
+    }
+
+    private double velocityIn(int k, double dt) {
+        return v[k] + dt * (a[k] + dt * j[k] / 2);
+    }
+
+    /**
+     * Returns the number of time steps until the cabin reaches the next floor in the
+     * direction of its movement, changes its direction or the phase of its movement,
+     * whichever comes first. The position of the cabin is monotonic until then.
+     * @param topFloor the number of the top floor
+     * @return the number of time steps (at least 1), or <code>Long.MAX_VALUE</code>
+     * if the cabin does not move
+     */
+    public long ticksToNextEvent(int topFloor) {
+        if (!isMoving()) return Long.MAX_VALUE;
+        double now = time - origin;
+        int k = phase(now);
+        double end = (k < PHASES - 1) ? start[k + 1] : Double.POSITIVE_INFINITY;
+        double turn = turningTime(k, now - start[k]);
+        if (turn > 0) end = Math.min(end, now + turn);
+        // the direction of movement in this monotonic window
+        double dir = Math.signum(positionAt(Math.min(end, now + 1)) - positionAt(now));
+        if (dir == 0) return 1;
+        double position = positionAt(now);
+        double target = (dir > 0) ? Math.min(Math.floor(position + 1e-9) + 1, topFloor) :
+                Math.max(Math.ceil(position - 1e-9) - 1, 0);
+        long limit = (end == Double.POSITIVE_INFINITY) ? Long.MAX_VALUE : Math.max(1, (long) Math.ceil(end - now));
+        if (limit != Long.MAX_VALUE && dir * (positionAt(now + limit) - target) < -1e-9) return limit;
+        // the smallest number of time steps at which the target is reached
+        long low = 0, high = 1;
+        while (dir * (positionAt(now + high) - target) < -1e-9) {
+            low = high;
+            high = (high > limit / 2) ? limit : high * 2;
+        }
+        while (high - low > 1) {
+            long middle = (low + high) >>> 1;
+            if (dir * (positionAt(now + middle) - target) < -1e-9) low = middle;
+            else high = middle;
+        }
+        return Math.max(1, high);
+    }
+
+    /**
+     * Returns the time since dt within phase k when the velocity changes its sign,
+     * or 0 if it does not within the phase.
+     */
+    private double turningTime(int k, double dt) {
+        double v0 = velocityIn(k, dt), a0 = a[k] + j[k] * dt, half = j[k] / 2;
+        double root = 0;
+        if (half == 0) {
+            if (a0 != 0) root = -v0 / a0;
+        } else {
+            double disc = a0 * a0 - 4 * half * v0;
+            if (disc >= 0) {
+                double sq = Math.sqrt(disc);
+                double r1 = (-a0 - sq) / (2 * half), r2 = (-a0 + sq) / (2 * half);
+                double lo = Math.min(r1, r2), hi = Math.max(r1, r2);
+                root = (lo > 1e-9) ? lo : hi;
+            }
+        }
+        return (root > 1e-9) ? root : 0;
+    }
+}
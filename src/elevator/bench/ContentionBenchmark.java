@@ -0,0 +1,214 @@
+package elevator.bench;
+
+import elevator.DoorStatus;
+import elevator.Elevators;
+import elevator.FleetState;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Title:        Green Elevator
+ * Description:  Green Elevator, 2G1915
+ * Copyright:    Copyright (c) 2001
+ * Company:      IMIT/KTH
+ *
+ * @author Vlad Vlassov
+ * @version 1.0
+ */
+
+/**
+ * Measures contention on the state of elevators between the animation time step and
+ * many concurrent controllers, as when many RMI clients call motors, doors and
+ * <code>whereIs</code> while the simulation runs.
+ * <p>The benchmark runs the same workload twice: first against a model where each
+ * elevator is guarded by a motor lock and a door lock (as <code>Elevator</code> was before the
+ * state was packed), then against the lock-free <code>FleetState</code>.
+ * One thread performs time steps of the whole fleet back-to-back, the caller threads
+ * issue a random mix of motor commands, door commands and position reads.
+ * The throughput of both the time steps and the callers is printed.
+ * <p>Usage: <code>java elevator.bench.ContentionBenchmark [callers] [elevators] [seconds]</code>
+ * @see elevator.FleetState
+ */
+public class ContentionBenchmark {
+
+    /**
+     * The part of the model exercised by the benchmark.
+     */
+    interface Model {
+        void stepAll();
+
+        void motor(int i, int dir);
+
+        void door(int i, int dir);
+
+        double where(int i);
+    }
+
+    /**
+     * The elevators state guarded by a motor lock and a door lock per elevator.
+     */
+    static class MonitorModel implements Model {
+        private final Object[] motorLock, doorLock;
+        private final double[] pos;
+        private final int[] dir, doordir, doorstat;
+        private final int top;
+
+        MonitorModel(int n, int top) {
+            this.top = top;
+            motorLock = new Object[n];
+            doorLock = new Object[n];
+            pos = new double[n];
+            dir = new int[n];
+            doordir = new int[n];
+            doorstat = new int[n];
+            for (int i = 0; i < n; i++) {
+                motorLock[i] = new Object();
+                doorLock[i] = new Object();
+            }
+        }
+
+        public void stepAll() {
+            for (int i = 0; i < pos.length; i++) {
+                synchronized (motorLock[i]) {
+                    if (dir[i] != 0) {
+                        double p = pos[i] + dir[i] * Elevators.step;
+                        if (p < 0 || p > top) {
+                            p = Math.max(0, Math.min(top, p));
+                            dir[i] = 0;
+                        }
+                        pos[i] = p;
+                    }
+                }
+                synchronized (doorLock[i]) {
+                    int d = doordir[i];
+                    if (d != 0) {
+                        if ((doorstat[i] == DoorStatus.CLOSED && d < 0) || (doorstat[i] == DoorStatus.OPEN4 && d > 0))
+                            d = 0;
+                        doorstat[i] += d;
+                        doordir[i] = d;
+                    }
+                }
+            }
+        }
+
+        public void motor(int i, int d) {
+            synchronized (motorLock[i]) {
+                dir[i] = d;
+            }
+        }
+
+        public void door(int i, int d) {
+            synchronized (doorLock[i]) {
+                doordir[i] = d;
+            }
+        }
+
+        public double where(int i) {
+            synchronized (motorLock[i]) {
+                return pos[i];
+            }
+        }
+    }
+
+    /**
+     * The lock-free <code>FleetState</code>.
+     */
+    static class PackedModel implements Model {
+        private final FleetState fleet;
+        private final boolean[] changed;
+
+        PackedModel(int n, int top) {
+            fleet = new FleetState(n, top);
+            changed = new boolean[n];
+        }
+
+        public void stepAll() {
+            fleet.stepAll(Elevators.step, changed);
+        }
+
+        public void motor(int i, int dir) {
+            fleet.setMotorDirection(i, dir);
+        }
+
+        public void door(int i, int dir) {
+            fleet.setDoorDirection(i, dir);
+        }
+
+        public double where(int i) {
+            return fleet.getPosition(i);
+        }
+    }
+
+    /**
+     * Runs the workload against the given model and prints the throughput.
+     */
+    static void run(String name, final Model model, int callers, final int elevators, long millis)
+            throws InterruptedException {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong ticks = new AtomicLong(), calls = new AtomicLong();
+        Thread ticker = new Thread() {
+            public void run() {
+                long n = 0;
+                while (running.get()) {
+                    model.stepAll();
+                    n++;
+                }
+                ticks.set(n);
+            }
+        };
+        Thread[] threads = new Thread[callers];
+        for (int t = 0; t < callers; t++) {
+            final long seed = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    Random random = new Random(seed);
+                    long n = 0;
+                    double sink = 0;
+                    while (running.get()) {
+                        int i = random.nextInt(elevators);
+                        switch (random.nextInt(4)) {
+                            case 0:
+                                model.motor(i, random.nextInt(3) - 1);
+                                break;
+                            case 1:
+                                model.door(i, random.nextInt(3) - 1);
+                                break;
+                            default:
+                                sink += model.where(i);
+                        }
+                        n++;
+                    }
+                    calls.addAndGet(n + (sink < 0 ? 1 : 0));
+                }
+            };
+        }
+        ticker.start();
+        for (int t = 0; t < callers; t++) threads[t].start();
+        Thread.sleep(millis);
+        running.set(false);
+        ticker.join();
+        for (int t = 0; t < callers; t++) threads[t].join();
+        double seconds = millis / 1000.0;
+        System.out.printf("%-8s time steps/s: %12.0f   calls/s: %12.0f%n",
+                name, ticks.get() / seconds, calls.get() / seconds);
+    }
+
+    /**
+     * The main entry to the benchmark.
+     * @param args [callers] [elevators] [seconds]
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int callers = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int elevators = args.length > 1 ? Integer.parseInt(args[1]) : Elevators.MaxNumberOfElevators;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int top = Elevators.MaxTopFloor;
+        System.out.println("callers = " + callers + ", elevators = " + elevators + ", seconds = " + seconds);
+        // warm up both, then measure
+        run("warm-up", new MonitorModel(elevators, top), callers, elevators, 1000);
+        run("warm-up", new PackedModel(elevators, top), callers, elevators, 1000);
+        run("monitor", new MonitorModel(elevators, top), callers, elevators, seconds * 1000L);
+        run("packed", new PackedModel(elevators, top), callers, elevators, seconds * 1000L);
+    }
+}
@@ -0,0 +1,165 @@
+package elevator.bench;
+
+import elevator.Elevators;
+import elevator.controller.ElevatorController;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+/**
+ * Title:        Green Elevator
+ * Description:  Green Elevator, 2G1915
+ * Copyright:    Copyright (c) 2001
+ * Company:      IMIT/KTH
+ *
+ * @author Vlad Vlassov
+ * @version 1.0
+ */
+
+/**
+ * Measures the threads and the memory used by the built-in controller for a large
+ * fleet, with one thread per car (the default) or with the cars sharing a scheduler
+ * (the "-controller n" option of Elevators).
+ * <p>The benchmark plays the Elevators application: it listens on the default port,
+ * moves a car whenever the controller starts its motor and sends its positions every
+ * 20 ms, answers the "v" command, and presses floor buttons at random floors, on average
+ * once per car every 20 seconds. Whenever the doors of a car open, a passenger presses a
+ * panel button to a random floor with a probability of one half. At the end it prints the number of live threads, the
+ * peak number of threads, the heap used after a garbage collection, the resident set size
+ * of the process (on Linux), the waiting time of hall calls and the latency from calls
+ * to motor commands. The debug output of the controller is discarded. As the car threads
+ * of the controller never end, each mode runs in a JVM of its own.
+ * <p>Usage: <code>java elevator.bench.ControllerBenchmark [schedulerThreads] [cars] [seconds] [reassignMs]</code>,
+ * where 0 scheduler threads means one thread per car and the hall calls are reassigned
+ * every <i>reassignMs</i> milliseconds (1000 by default, 0 never).
+ * @see elevator.controller.ElevatorController
+ */
+public class ControllerBenchmark {
+    private static final int TOP = 20;
+    private static final double STEP = 0.04;
+    private static final int PERIOD = 20;
+    /* Seconds between two calls per car on average */
+    private static final double CALL_INTERVAL = 20;
+
+    /**
+     * Returns the resident set size of the process where the operating system reports it
+     * (Linux), null otherwise.
+     */
+    private static String residentSize() {
+        try {
+            BufferedReader status = new BufferedReader(new FileReader("/proc/self/status"));
+            try {
+                String line;
+                while ((line = status.readLine()) != null)
+                    if (line.startsWith("VmRSS:")) return line.substring(6).trim();
+            } finally {
+                status.close();
+            }
+        } catch (Exception e) {
+        }
+        return null;
+    }
+
+    /**
+     * The main entry to the benchmark.
+     * @param args [schedulerThreads] [cars] [seconds] [reassignMs]
+     */
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        int cars = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int reassign = args.length > 3 ? Integer.parseInt(args[3]) : Elevators.reassignPeriod;
+        System.out.println("scheduler threads = " + threads + ", cars = " + cars + ", seconds = " + seconds +
+                ", reassignment period = " + reassign + " ms");
+        Elevators.numberOfElevators = cars;
+        Elevators.topFloor = TOP;
+        Elevators.controllerThreads = threads;
+        Elevators.reassignPeriod = reassign;
+        ServerSocket server = new ServerSocket(Elevators.defaultPort);
+        PrintStream results = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        ElevatorController controller = new ElevatorController();
+        new Thread(controller).start();
+        Socket socket = server.accept();
+        final int[] motor = new int[cars];
+        final double[] position = new double[cars];
+        final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        final PrintStream out = new PrintStream(socket.getOutputStream(), false);
+        Thread reader = new Thread("Commands") {
+            public void run() {
+                Random passengers = new Random(1);
+                try {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        StringTokenizer tokenizer = new StringTokenizer(line);
+                        String command = tokenizer.nextToken();
+                        if (command.equals("v"))
+                            out.println("v " + STEP / PERIOD);
+                        if (command.equals("d") && line.endsWith(" 1") && passengers.nextBoolean())
+                            out.println("p " + tokenizer.nextToken() + " " + passengers.nextInt(TOP + 1));
+                        if (!command.equals("m")) continue;
+                        int i = Integer.parseInt(tokenizer.nextToken()) - 1;
+                        int dir = Integer.parseInt(tokenizer.nextToken());
+                        synchronized (motor) {
+                            motor[i] = dir;
+                        }
+                    }
+                } catch (Exception e) {
+                }
+            }
+        };
+        reader.setDaemon(true);
+        reader.start();
+        Random random = new Random(0);
+        long end = System.currentTimeMillis() + seconds * 1000L;
+        long calls = 0;
+        double due = 0;
+        while (System.currentTimeMillis() < end) {
+            Thread.sleep(PERIOD);
+            synchronized (motor) {
+                for (int i = 0; i < cars; i++) {
+                    if (motor[i] == 0) continue;
+                    position[i] = Math.max(0, Math.min(TOP, position[i] + motor[i] * STEP));
+                    out.println("f " + (i + 1) + " " + Math.round(position[i] * 100) / 100.0);
+                }
+            }
+            due += cars * PERIOD / (CALL_INTERVAL * 1000) * 2 * random.nextDouble();
+            for (; due >= 1; due--, calls++)
+                out.println("b " + random.nextInt(TOP + 1) + " " + (random.nextBoolean() ? 1 : -1));
+            out.flush();
+        }
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        results.println("calls = " + calls);
+        results.println("live threads = " + threadBean.getThreadCount() + ", peak threads = " + threadBean.getPeakThreadCount());
+        results.printf("heap used = %.1f MB, non-heap used = %.1f MB%n",
+                memoryBean.getHeapMemoryUsage().getUsed() / 1e6, memoryBean.getNonHeapMemoryUsage().getUsed() / 1e6);
+        String resident = residentSize();
+        if (resident != null) results.println("resident set size = " + resident + " (includes the thread stacks)");
+        results.println(controller.getWaitingReport());
+        results.println("hall calls reassigned = " + controller.getReassignedCount());
+        results.println(controller.getLatencyReport());
+        results.println(controller.getDoorReport());
+        results.println(controller.getDisplayReport());
+        results.println(controller.getCommandReport());
+        results.flush();
+        System.exit(0);
+    }
+}
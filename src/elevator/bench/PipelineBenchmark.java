@@ -0,0 +1,113 @@
+package elevator.bench;
+
+import elevator.Elevators;
+import elevator.controller.ElevatorController;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.StringTokenizer;
+
+/**
+ * Title:        Green Elevator
+ * Description:  Green Elevator, 2G1915
+ * Copyright:    Copyright (c) 2001
+ * Company:      IMIT/KTH
+ *
+ * @author Vlad Vlassov
+ * @version 1.0
+ */
+
+/**
+ * Checks the command pipeline of the built-in controller when its ring is full.
+ * <p>The benchmark plays the Elevators application for one car: once the controller
+ * has asked for the velocity, it stops reading the socket for a while, so the socket
+ * buffers and then the ring of the pipeline fill up, while a number of threads send
+ * numbered commands through the controller. Threads waiting for a slot should park
+ * rather than spin, so it prints the CPU time the senders have used during the stall
+ * as a share of its length. It then reads all commands and checks that none of them
+ * has been lost and that the commands of each sender have arrived in order.
+ * <p>Usage: <code>java elevator.bench.PipelineBenchmark [senders] [commands] [stallSeconds]</code>,
+ * where each sender sends <i>commands</i> commands.
+ * @see elevator.controller.ElevatorController#sendCommand(String)
+ */
+public class PipelineBenchmark {
+
+    /**
+     * The main entry to the benchmark.
+     * @param args [senders] [commands] [stallSeconds]
+     */
+    public static void main(String[] args) throws Exception {
+        int senders = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        final int commands = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        int stall = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        System.out.println("senders = " + senders + ", commands per sender = " + commands +
+                ", stall = " + stall + " s");
+        Elevators.numberOfElevators = 1;
+        ServerSocket server = new ServerSocket(Elevators.defaultPort);
+        PrintStream results = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        final ElevatorController controller = new ElevatorController();
+        new Thread(controller).start();
+        Socket socket = server.accept();
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        // The controller asks for the velocity once its pipeline is up
+        String line;
+        while ((line = in.readLine()) != null && !line.equals("v")) ;
+
+        Thread[] threads = new Thread[senders];
+        long[] ids = new long[senders];
+        for (int t = 0; t < senders; t++) {
+            final int sender = t;
+            threads[t] = new Thread("Sender " + t) {
+                public void run() {
+                    for (int n = 0; n < commands; n++)
+                        controller.sendCommand("x " + sender + " " + n);
+                }
+            };
+            ids[t] = threads[t].getId();
+            threads[t].start();
+        }
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        // Let the buffers fill up before the CPU time is measured
+        Thread.sleep(500);
+        long cpuBefore = 0;
+        for (long id : ids) cpuBefore += Math.max(0, threadBean.getThreadCpuTime(id));
+        long start = System.nanoTime();
+        Thread.sleep(stall * 1000L);
+        long cpu = 0;
+        for (long id : ids) cpu += Math.max(0, threadBean.getThreadCpuTime(id));
+        cpu -= cpuBefore;
+        long stalled = System.nanoTime() - start;
+
+        int[] next = new int[senders];
+        long received = 0, outOfOrder = 0, total = (long) senders * commands;
+        while (received < total && (line = in.readLine()) != null) {
+            if (!line.startsWith("x ")) continue;
+            StringTokenizer tokenizer = new StringTokenizer(line.substring(2));
+            int sender = Integer.parseInt(tokenizer.nextToken());
+            int n = Integer.parseInt(tokenizer.nextToken());
+            if (n != next[sender]) outOfOrder++;
+            next[sender] = n + 1;
+            received++;
+        }
+        for (Thread thread : threads) thread.join();
+        results.printf("sender CPU during the stall = %.1f %% of one core per sender%n",
+                100.0 * cpu / stalled / senders);
+        results.println("commands received = " + received + " of " + total + ", out of order = " + outOfOrder);
+        results.println(controller.getCommandReport());
+        results.flush();
+        System.exit(received == total && outOfOrder == 0 ? 0 : 1);
+    }
+}
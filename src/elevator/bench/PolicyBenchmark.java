@@ -0,0 +1,303 @@
+package elevator.bench;
+
+import elevator.Elevators;
+import elevator.controller.ElevatorController;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Title:        Green Elevator
+ * Description:  Green Elevator, 2G1915
+ * Copyright:    Copyright (c) 2001
+ * Company:      IMIT/KTH
+ *
+ * @author Vlad Vlassov
+ * @version 1.0
+ */
+
+/**
+ * Compares the dispatch policies of the built-in controller (the "-policy" option of
+ * Elevators) on the same recorded passenger traffic.
+ * <p>The traffic is a text file with one passenger per line: the time of arrival in
+ * seconds, the floor of arrival and the destination floor. Lines starting with "#" are
+ * comments. If the file does not exist, the benchmark generates random traffic, on
+ * average one passenger per car every 15 seconds between random floors, and writes it
+ * to the file, so the same traffic can be played again, e.g. after a change of a policy.
+ * <p>Each policy runs in a JVM of its own, as the car threads of the controller never
+ * end. The benchmark plays the Elevators application like <code>ControllerBenchmark</code>:
+ * a passenger presses the floor button on arrival, enters the first car that opens its
+ * doors at the floor and presses the panel button of the destination. After the last
+ * arrival the run goes on for at most 60 seconds to deliver the passengers left. For
+ * each policy the benchmark prints the number of passengers delivered, the waiting time
+ * (from the arrival to the doors opening), the journey time (from the arrival to the
+ * doors opening at the destination) and the stops per trip (the stops of the car from
+ * the boarding to the destination, both excluded and included respectively).
+ * <p>Usage: <code>java elevator.bench.PolicyBenchmark [cars] [seconds] [trafficFile] [reassignMs]</code>,
+ * where <i>seconds</i> is the length of generated traffic and the hall calls are
+ * reassigned every <i>reassignMs</i> milliseconds (0 by default, so the policies are
+ * compared on their own).
+ * @see elevator.controller.ElevatorController#POLICIES
+ */
+public class PolicyBenchmark {
+    private static final int TOP = 20;
+    private static final double STEP = 0.04;
+    private static final int PERIOD = 20;
+    /* Seconds between two passengers per car on average */
+    private static final double ARRIVAL_INTERVAL = 15;
+    /* Seconds the run goes on after the last arrival */
+    private static final int DRAIN = 60;
+
+    /**
+     * A passenger of the traffic.
+     */
+    private static class Passenger {
+        final double time;
+        final int origin;
+        final int destination;
+        double waited;
+        int stopsAtBoarding;
+
+        Passenger(double time, int origin, int destination) {
+            this.time = time;
+            this.origin = origin;
+            this.destination = destination;
+        }
+    }
+
+    /**
+     * The main entry to the benchmark.
+     * @param args [cars] [seconds] [trafficFile] [reassignMs]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 5 && args[0].equals("-run")) {
+            run(args[1], Integer.parseInt(args[2]), args[3], Integer.parseInt(args[4]));
+            return;
+        }
+        int cars = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 120;
+        File traffic;
+        if (args.length > 2) {
+            traffic = new File(args[2]);
+        } else {
+            traffic = File.createTempFile("traffic", ".txt");
+            traffic.delete();
+            traffic.deleteOnExit();
+        }
+        int reassign = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+        if (!traffic.exists()) generate(traffic, cars, seconds);
+        System.out.println("cars = " + cars + ", traffic = " + traffic + ", reassignment period = " + reassign + " ms");
+        System.out.println("policy   delivered   wait mean / 95% / max (s)   journey mean / 95% / max (s)   stops per trip");
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        for (String policy : ElevatorController.POLICIES) {
+            Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    PolicyBenchmark.class.getName(), "-run", policy, "" + cars, traffic.getPath(), "" + reassign)
+                    .inheritIO().start();
+            process.waitFor();
+        }
+    }
+
+    /**
+     * Writes random traffic to a file.
+     */
+    private static void generate(File file, int cars, int seconds) throws Exception {
+        Random random = new Random(0);
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            out.println("# time origin destination, " + cars + " cars, top floor " + TOP);
+            double time = 0;
+            while (true) {
+                time += -Math.log(1 - random.nextDouble()) * ARRIVAL_INTERVAL / cars;
+                if (time >= seconds) break;
+                int origin = random.nextInt(TOP + 1), destination = random.nextInt(TOP);
+                if (destination >= origin) destination++;
+                out.printf("%.3f %d %d%n", time, origin, destination);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads traffic from a file.
+     */
+    private static List<Passenger> read(String file) throws Exception {
+        List<Passenger> passengers = new ArrayList<Passenger>();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("#") || line.trim().length() == 0) continue;
+                StringTokenizer tokenizer = new StringTokenizer(line);
+                passengers.add(new Passenger(Double.parseDouble(tokenizer.nextToken()),
+                        Integer.parseInt(tokenizer.nextToken()), Integer.parseInt(tokenizer.nextToken())));
+            }
+        } finally {
+            in.close();
+        }
+        return passengers;
+    }
+
+    /**
+     * Plays the traffic with one policy and prints a line of results.
+     */
+    private static void run(String policy, int cars, String file, int reassign) throws Exception {
+        List<Passenger> traffic = read(file);
+        Elevators.numberOfElevators = cars;
+        Elevators.topFloor = TOP;
+        Elevators.reassignPeriod = reassign;
+        Elevators.dispatchPolicy = policy;
+        ServerSocket server = new ServerSocket();
+        server.setReuseAddress(true);
+        server.bind(new InetSocketAddress(Elevators.defaultPort));
+        PrintStream results = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        new Thread(new ElevatorController()).start();
+        Socket socket = server.accept();
+        final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        final PrintStream out = new PrintStream(socket.getOutputStream(), false);
+        // The motor and door commands, played by the main thread at the next time step
+        final ConcurrentLinkedQueue<int[]> commands = new ConcurrentLinkedQueue<int[]>();
+        Thread reader = new Thread("Commands") {
+            public void run() {
+                try {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        StringTokenizer tokenizer = new StringTokenizer(line);
+                        String command = tokenizer.nextToken();
+                        if (command.equals("v")) {
+                            out.println("v " + STEP / PERIOD);
+                            out.flush();
+                        } else if (command.equals("m") || command.equals("d")) {
+                            commands.add(new int[]{command.charAt(0), Integer.parseInt(tokenizer.nextToken()) - 1,
+                                    Integer.parseInt(tokenizer.nextToken())});
+                        }
+                    }
+                } catch (Exception e) {
+                }
+            }
+        };
+        reader.setDaemon(true);
+        reader.start();
+
+        int[] motor = new int[cars];
+        double[] position = new double[cars];
+        boolean[] open = new boolean[cars];
+        int[] stops = new int[cars];
+        List<List<Passenger>> riders = new ArrayList<List<Passenger>>();
+        for (int i = 0; i < cars; i++) riders.add(new ArrayList<Passenger>());
+        List<Passenger> waiting = new ArrayList<Passenger>();
+        List<Double> waits = new ArrayList<Double>(), journeys = new ArrayList<Double>();
+        long totalStops = 0;
+        int next = 0;
+        double end = (traffic.isEmpty() ? 0 : traffic.get(traffic.size() - 1).time) + DRAIN;
+        long start = System.nanoTime();
+        while (true) {
+            Thread.sleep(PERIOD);
+            double now = (System.nanoTime() - start) / 1e9;
+            int[] command;
+            while ((command = commands.poll()) != null) {
+                int i = command[1];
+                if (command[0] == 'm') {
+                    motor[i] = command[2];
+                } else if (command[2] != 1) {
+                    open[i] = false;
+                } else {
+                    open[i] = true;
+                    stops[i]++;
+                    int floor = (int) Math.round(position[i]);
+                    for (Iterator<Passenger> it = riders.get(i).iterator(); it.hasNext(); ) {
+                        Passenger p = it.next();
+                        if (p.destination != floor) continue;
+                        it.remove();
+                        journeys.add(now - p.time);
+                        totalStops += stops[i] - p.stopsAtBoarding;
+                    }
+                    for (Iterator<Passenger> it = waiting.iterator(); it.hasNext(); ) {
+                        Passenger p = it.next();
+                        if (p.origin != floor) continue;
+                        it.remove();
+                        board(p, i, now, stops, riders, waits, out);
+                    }
+                }
+            }
+            for (int i = 0; i < cars; i++) {
+                if (motor[i] == 0) continue;
+                position[i] = Math.max(0, Math.min(TOP, position[i] + motor[i] * STEP));
+                out.println("f " + (i + 1) + " " + Math.round(position[i] * 100) / 100.0);
+            }
+            for (; next < traffic.size() && traffic.get(next).time <= now; next++) {
+                Passenger p = traffic.get(next);
+                int car = -1;
+                for (int i = 0; i < cars && car == -1; i++)
+                    if (open[i] && Math.round(position[i]) == p.origin) car = i;
+                if (car != -1) {
+                    board(p, car, p.time, stops, riders, waits, out);
+                } else {
+                    waiting.add(p);
+                    out.println("b " + p.origin + " " + (p.destination > p.origin ? 1 : -1));
+                }
+            }
+            out.flush();
+            if (now >= end || (next == traffic.size() && journeys.size() == traffic.size())) break;
+        }
+        double[] w = sorted(waits), j = sorted(journeys);
+        results.printf("%-8s %4d/%-4d   %6.2f / %6.2f / %6.2f       %6.2f / %6.2f / %6.2f          %5.2f%n",
+                policy, j.length, traffic.size(), mean(w), percentile(w, 95), percentile(w, 100),
+                mean(j), percentile(j, 95), percentile(j, 100), j.length == 0 ? 0 : (double) totalStops / j.length);
+        results.flush();
+        System.exit(0);
+    }
+
+    /**
+     * Lets a passenger enter a car and press the panel button of the destination.
+     */
+    private static void board(Passenger p, int car, double now, int[] stops, List<List<Passenger>> riders,
+                              List<Double> waits, PrintStream out) {
+        p.waited = now - p.time;
+        p.stopsAtBoarding = stops[car];
+        waits.add(p.waited);
+        riders.get(car).add(p);
+        out.println("p " + (car + 1) + " " + p.destination);
+    }
+
+    private static double[] sorted(List<Double> values) {
+        double[] a = new double[values.size()];
+        for (int i = 0; i < a.length; i++) a[i] = values.get(i);
+        Arrays.sort(a);
+        return a;
+    }
+
+    private static double mean(double[] a) {
+        double sum = 0;
+        for (double x : a) sum += x;
+        return a.length == 0 ? 0 : sum / a.length;
+    }
+
+    private static double percentile(double[] a, int percent) {
+        if (a.length == 0) return 0;
+        return a[Math.max(0, (int) Math.ceil(a.length * percent / 100.0) - 1)];
+    }
+}
@@ -0,0 +1,253 @@
+package elevator.controller;
+
+import elevator.Elevators;
+
+import java.util.Arrays;
+
+/**
+ * Title:        Elevator Controller Car Model
+ * Description:  A copy of the state of one elevator for the look-ahead simulations of
+ *               the rollout policy: its position, direction, queues and the hall calls
+ *               it has not served yet, with the passengers waiting at each and the sum
+ *               of the times they came, in seconds from the call being dispatched. The
+ *               queues are bitsets, so a copy is a few arrays cloned. The model moves
+ *               from stop to stop in the collective order, at the top velocity with the
+ *               motion limits of the cabins, and holds a full door cycle at each stop;
+ *               each passenger picked up presses a floor in the direction of the call,
+ *               the same floor in every copy, the lobby on the way down.
+ * Company:      KTH
+ * Course:       ID1217 Concurrent Programming.
+ *
+ * @authors Emil Lindholm Brandt & Sabina Hauzenberger
+ * @version 1.0
+ */
+
+class CarModel {
+
+    private static final int LEVEL = ElevatorState.LEVEL;
+
+    /* The elevator modelled, for its travel times */
+    private final ElevatorState car;
+    /* The position in floors */
+    private double pos;
+    private int direction;
+    private final FloorRequests upQueue, downQueue, upCalls, downCalls;
+    /* The passengers waiting at the hall call of each floor and direction, and the sum of
+       the times they came, see ElevatorState.callIndex */
+    private int[] waiting;
+    private double[] since;
+    /* The stop the model travels to, -1 if none, and when and where it has left */
+    private int target = -1;
+    private double departed, departPos;
+    /* When the model decides next, at the end of a travel or door cycle, infinite if idle */
+    private double ready;
+
+    /**
+     * Creates a model of an elevator, with one passenger at each hall call. The queues
+     * are copied.
+     * @param car The elevator.
+     * @param pos The position in floors.
+     * @param direction The direction the elevator has been moving in.
+     * @param upQueue The requests to stop on the way up.
+     * @param downQueue The requests to stop on the way down.
+     * @param upCalls The hall calls up not served yet.
+     * @param downCalls The hall calls down not served yet.
+     * @param since When each hall call has been made, in seconds.
+     * @param ready When the elevator decides next, in seconds, e.g. after its door cycle.
+     */
+    CarModel(ElevatorState car, double pos, int direction, FloorRequests upQueue, FloorRequests downQueue,
+             FloorRequests upCalls, FloorRequests downCalls, double[] since, double ready) {
+        this.car = car;
+        this.pos = pos;
+        this.direction = direction;
+        this.upQueue = new FloorRequests(upQueue);
+        this.downQueue = new FloorRequests(downQueue);
+        this.upCalls = new FloorRequests(upCalls);
+        this.downCalls = new FloorRequests(downCalls);
+        this.since = since;
+        this.ready = ready;
+        waiting = new int[since.length];
+        for (int f = upCalls.lowest(); f != -1; f = upCalls.nextAtOrAbove(f + 1))
+            waiting[ElevatorState.callIndex(f, Elevators.UP)] = 1;
+        for (int f = downCalls.lowest(); f != -1; f = downCalls.nextAtOrAbove(f + 1))
+            waiting[ElevatorState.callIndex(f, Elevators.DOWN)] = 1;
+    }
+
+    /**
+     * Creates a copy of a model.
+     */
+    private CarModel(CarModel other) {
+        this(other.car, other.pos, other.direction, other.upQueue, other.downQueue, other.upCalls, other.downCalls,
+                other.since.clone(), other.ready);
+        waiting = other.waiting.clone();
+        target = other.target;
+        departed = other.departed;
+        departPos = other.departPos;
+    }
+
+    /**
+     * Gives a copy of the model, to be played apart from it.
+     * @return The copy.
+     */
+    CarModel copy() {
+        return new CarModel(this);
+    }
+
+    /**
+     * Takes the stop at a floor as served, for an elevator whose doors are open there.
+     * @param floor The floor.
+     */
+    void doorsOpenAt(int floor) {
+        upQueue.remove(floor);
+        downQueue.remove(floor);
+        upCalls.remove(floor);
+        downCalls.remove(floor);
+        for (int i = 2 * floor; i < 2 * floor + 2 && i < waiting.length; i++) {
+            waiting[i] = 0;
+            since[i] = 0;
+        }
+    }
+
+    /**
+     * Gives the time of the next decision of the model.
+     * @return The time in seconds, infinite if the model is idle.
+     */
+    double getReady() {
+        return ready;
+    }
+
+    /**
+     * Assigns a passenger at a hall call to the model. A moving model decides again
+     * from where it is.
+     * @param floor The floor of the call.
+     * @param direction The requested direction.
+     * @param since When the passenger has come, in seconds.
+     * @param now The current time in seconds.
+     */
+    void addCall(int floor, int direction, double since, double now) {
+        int i = ElevatorState.callIndex(floor, direction);
+        if (i >= waiting.length) {
+            waiting = Arrays.copyOf(waiting, i + 2);
+            this.since = Arrays.copyOf(this.since, i + 2);
+        }
+        if (direction == Elevators.UP)
+            upCalls.add(floor);
+        else
+            downCalls.add(floor);
+        waiting[i]++;
+        this.since[i] += since;
+        addStop(floor, direction, now);
+    }
+
+    /**
+     * Adds a stop to a queue and makes the model decide at once if it is idle or moving.
+     */
+    private void addStop(int floor, int direction, double now) {
+        if (direction == Elevators.UP)
+            upQueue.add(floor);
+        else
+            downQueue.add(floor);
+        if (target != -1) {
+            pos = positionAt(now);
+            target = -1;
+            ready = now;
+        } else if (ready == Double.POSITIVE_INFINITY) {
+            ready = now;
+        }
+    }
+
+    /**
+     * Gives the position of the model at a time, linear between the stops.
+     */
+    private double positionAt(double now) {
+        if (target == -1 || ready <= departed)
+            return pos;
+        double part = Math.min(1, Math.max(0, (now - departed) / (ready - departed)));
+        return departPos + (target - departPos) * part;
+    }
+
+    /**
+     * Plays the next decision of the model, at its ready time: serves the stop it has
+     * arrived at, or leaves for the next one in the order of the policy.
+     * @param policy The policy of the stop order.
+     * @param floorsPerSecond The velocity of the elevators.
+     * @return The sum of the waiting times of the hall calls served, in seconds.
+     */
+    double step(DispatchPolicy policy, double floorsPerSecond) {
+        double now = ready;
+        if (target != -1) {
+            // Arrived: the doors open for the calls both ways and close again
+            pos = target;
+            double waited = serve(target, Elevators.UP, now) + serve(target, Elevators.DOWN, now);
+            upQueue.remove(target);
+            downQueue.remove(target);
+            target = -1;
+            ready = now + ElevatorState.DOOR_SECONDS;
+            return waited;
+        }
+        int next = policy.nextStop((int) Math.round(pos * LEVEL), direction, upQueue, downQueue);
+        if (next == -1) {
+            ready = Double.POSITIVE_INFINITY;
+            return 0;
+        }
+        if (next != pos)
+            direction = (next > pos) ? Elevators.UP : Elevators.DOWN;
+        target = next;
+        departed = now;
+        departPos = pos;
+        ready = now + car.travelTime(Math.abs(next - pos), floorsPerSecond);
+        return 0;
+    }
+
+    /**
+     * Serves the hall call at a floor in a direction, if any, and adds the floors its
+     * passengers press.
+     * @return The sum of the waiting times of the passengers in seconds, 0 if none.
+     */
+    private double serve(int floor, int direction, double now) {
+        FloorRequests calls = (direction == Elevators.UP) ? upCalls : downCalls;
+        if (!calls.contains(floor))
+            return 0;
+        calls.remove(floor);
+        int i = ElevatorState.callIndex(floor, direction);
+        for (int k = 0; k < waiting[i]; k++) {
+            int destination = destination(floor, direction, since[i] + k);
+            if (destination > floor)
+                upQueue.add(destination);
+            else if (destination != -1)
+                downQueue.add(destination);
+        }
+        double waited = waiting[i] * now - since[i];
+        waiting[i] = 0;
+        since[i] = 0;
+        return waited;
+    }
+
+    /**
+     * Gives the floor a passenger picked up at a hall call presses: the lobby on the
+     * way down, as most trips down end there, and on the way up a floor above, spread
+     * by the times of the call so every copy agrees.
+     * @return The floor, -1 if there is none that way.
+     */
+    private static int destination(int floor, int direction, double made) {
+        if (direction == Elevators.DOWN)
+            return (floor > 0) ? 0 : -1;
+        int floors = Elevators.topFloor - floor;
+        if (floors <= 0)
+            return -1;
+        long hash = (Double.doubleToLongBits(made) + floor) * 0x9E3779B97F4A7C15L;
+        return floor + 1 + (int) ((hash >>> 33) % floors);
+    }
+
+    /**
+     * Gives the waiting time until an end time of the passengers not picked up by then.
+     * @param end The end time in seconds.
+     * @return The sum of the waiting times in seconds.
+     */
+    double waitingAt(double end) {
+        double waited = 0;
+        for (int i = 0; i < waiting.length; i++)
+            waited += waiting[i] * end - since[i];
+        return waited;
+    }
+}
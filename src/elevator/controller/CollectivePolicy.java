@@ -0,0 +1,51 @@
+package elevator.controller;
+
+import elevator.Elevators;
+
+/**
+ * Title:        Elevator Controller Collective Policy
+ * Description:  The stop order of the collective control: an elevator keeps its
+ *               direction while there are requests ahead of it in that direction, then
+ *               serves the other direction. The subclasses decide which elevator takes
+ *               a hall call.
+ * Company:      KTH
+ * Course:       ID1217 Concurrent Programming.
+ *
+ * @authors Emil Lindholm Brandt & Sabina Hauzenberger
+ * @version 1.0
+ */
+
+abstract class CollectivePolicy implements DispatchPolicy {
+
+    private static final int LEVEL = ElevatorState.LEVEL;
+
+    public int nextStop(int level, int direction, FloorRequests upQueue, FloorRequests downQueue) {
+        /**
+         * Algorithm explanation:
+         * - 1st consideration:
+         * Is there a request for the same direction that we are traveling in,
+         * which is ahead of us as well?
+         * - 2nd consideration:
+         * Is there a request in the other direction at all?
+         * - 3rd consideration:
+         * Is there a request in the "original (1st)" direction at all, (but that wasn't ahead of us)?
+         */
+        int next;
+        if (direction == Elevators.UP) {
+            // The lowest up request above us
+            next = upQueue.nextAtOrAbove(level / LEVEL + 1);
+            if (next == -1)
+                next = downQueue.highest();
+            if (next == -1)
+                next = upQueue.lowest();
+        } else {
+            // We're going down: the highest down request below us
+            next = downQueue.nextAtOrBelow((level + LEVEL - 1) / LEVEL - 1);
+            if (next == -1)
+                next = upQueue.lowest();
+            if (next == -1)
+                next = downQueue.highest();
+        }
+        return next;
+    }
+}
@@ -0,0 +1,210 @@
+package elevator.controller;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Title:        Elevator Controller Command Pipeline
+ * Description:  The one way the commands of the controller leave for the application.
+ *               The elevator threads, often holding the lock of their elevator, only
+ *               copy a command into the next slot of a ring buffer: a motor, door or
+ *               scale command as one long of its kind, elevator and value, any other
+ *               as its text. A writer thread of its own writes the commands to the
+ *               socket in the order they were claimed, as many as have arrived, and
+ *               flushes once per batch, so no thread but the writer blocks on the socket.
+ *               A full ring makes the elevator threads wait, as commands are never
+ *               dropped; they park for a back-off that doubles up to MAX_BACKOFF
+ *               rather than spin, as they may hold the lock of their elevator. The
+ *               depth of the queue at each batch and the time from a command to the
+ *               flush that sends it are recorded.
+ * Company:      KTH
+ * Course:       ID1217 Concurrent Programming.
+ *
+ * @authors Emil Lindholm Brandt & Sabina Hauzenberger
+ * @version 1.0
+ */
+
+class CommandPipeline {
+
+    /* The kinds of commands */
+    private static final int TEXT = 0, MOTOR = 1, DOOR = 2, SCALE = 3;
+    private static final char[] LETTERS = {' ', 'm', 'd', 's'};
+
+    /* The number of slots of the ring, a power of two */
+    private static final int CAPACITY = 4096;
+    /* The most commands written before a flush */
+    private static final int MAX_BATCH = 256;
+    /* The first and the longest wait for a slot of a full ring in nanoseconds */
+    private static final long MIN_BACKOFF = 1000, MAX_BACKOFF = 1000000;
+
+    /* The commands, in slot order: the kind, elevator and value, or the text */
+    private final long[] records = new long[CAPACITY];
+    private final String[] texts = new String[CAPACITY];
+    private final long[] times = new long[CAPACITY];
+    /* The sequence number of the command in each slot, once it has been written */
+    private final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+    /* The next sequence number to claim */
+    private final AtomicLong claimed = new AtomicLong();
+    /* The next sequence number to write out, only advanced by the writer */
+    private volatile long consumed;
+    /* Set while the writer is parked, for the elevator threads to wake it up */
+    private volatile boolean waiting;
+
+    private final PrintWriter out;
+    private final Thread writer;
+    /* The time from a command to the flush that has sent it */
+    private final Latency latency = new Latency("Command to socket flush latency", "ms");
+    /* The statistics of the batches, only written by the writer */
+    private long batches, commands, depthTotal, maxDepth;
+
+    /**
+     * Creates a pipeline and starts its writer.
+     * @param out The output to the application.
+     */
+    CommandPipeline(PrintWriter out) {
+        this.out = out;
+        for (int i = 0; i < CAPACITY; i++)
+            published.set(i, -1);
+        writer = new Thread(new Runnable() {
+            public void run() {
+                drain();
+            }
+        }, "CommandPipeline");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues a command given as text, e.g. "v".
+     * @param command The command.
+     */
+    void send(String command) {
+        put(TEXT, 0, 0, command);
+    }
+
+    /**
+     * Queues an "m" command.
+     * @param id The elevator.
+     * @param direction The direction of the motor, 0 to stop it.
+     */
+    void motor(int id, int direction) {
+        put(MOTOR, id, direction, null);
+    }
+
+    /**
+     * Queues a "d" command.
+     * @param id The elevator.
+     * @param direction 1 to open the doors, -1 to close them.
+     */
+    void door(int id, int direction) {
+        put(DOOR, id, direction, null);
+    }
+
+    /**
+     * Queues an "s" command.
+     * @param id The elevator.
+     * @param floor The floor to show.
+     */
+    void scale(int id, int floor) {
+        put(SCALE, id, floor, null);
+    }
+
+    /**
+     * Copies a command into the next slot, waiting while the ring is full, and wakes
+     * the writer up if it is parked.
+     */
+    private void put(int kind, int id, int value, String text) {
+        long seq;
+        long backoff = MIN_BACKOFF;
+        while (true) {
+            seq = claimed.get();
+            if (seq - consumed >= CAPACITY) {
+                LockSupport.unpark(writer);
+                LockSupport.parkNanos(this, backoff);
+                backoff = Math.min(2 * backoff, MAX_BACKOFF);
+            } else if (claimed.compareAndSet(seq, seq + 1)) {
+                break;
+            }
+        }
+        int slot = (int) seq & (CAPACITY - 1);
+        records[slot] = ((long) kind << 56) | ((long) (id & 0xFFFFFF) << 32) | (value & 0xFFFFFFFFL);
+        texts[slot] = text;
+        times[slot] = System.nanoTime();
+        published.set(slot, seq);
+        if (waiting)
+            LockSupport.unpark(writer);
+    }
+
+    /**
+     * Writes out the commands in batches, parking while there are none.
+     */
+    private void drain() {
+        long next = consumed;
+        while (true) {
+            if (published.get((int) next & (CAPACITY - 1)) != next) {
+                waiting = true;
+                if (published.get((int) next & (CAPACITY - 1)) != next)
+                    LockSupport.park(this);
+                waiting = false;
+                continue;
+            }
+            long depth = claimed.get() - next;
+            long first = next;
+            while (next - first < MAX_BATCH && published.get((int) next & (CAPACITY - 1)) == next) {
+                write((int) next & (CAPACITY - 1));
+                next++;
+            }
+            out.flush();
+            long flushed = System.nanoTime();
+            for (long seq = first; seq != next; seq++) {
+                int slot = (int) seq & (CAPACITY - 1);
+                latency.record(flushed - times[slot]);
+                texts[slot] = null;
+            }
+            synchronized (this) {
+                batches++;
+                commands += next - first;
+                depthTotal += depth;
+                maxDepth = Math.max(maxDepth, depth);
+            }
+            consumed = next;
+        }
+    }
+
+    /**
+     * Writes the command of a slot as one line.
+     */
+    private void write(int slot) {
+        long record = records[slot];
+        int kind = (int) (record >>> 56);
+        if (kind == TEXT) {
+            out.println(texts[slot]);
+            return;
+        }
+        out.print(LETTERS[kind]);
+        out.print(' ');
+        out.print((int) (record >>> 32) & 0xFFFFFF);
+        out.print(' ');
+        out.println((int) record);
+    }
+
+    /**
+     * Gives a one-line report of the commands written, the batches they were flushed
+     * in and the depth of the queue.
+     * @return The report.
+     */
+    synchronized String report() {
+        return String.format("Commands written: %d in %d flushes, queue depth mean %.2f, max %d",
+                commands, batches, batches == 0 ? 0.0 : (double) depthTotal / batches, maxDepth);
+    }
+
+    /**
+     * Gives a one-line report of the time from commands to the flushes that sent them.
+     * @return The report.
+     */
+    String latencyReport() {
+        return latency.report();
+    }
+}
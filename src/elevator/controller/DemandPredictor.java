@@ -0,0 +1,257 @@
+package elevator.controller;
+
+import elevator.Elevators;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Title:        Elevator Controller Demand Predictor
+ * Description:  An online estimate of the traffic: the rate of hall calls at each floor
+ *               in each direction, for each quarter of an hour of the day. Each bucket
+ *               holds the calls made in it and the time it has been observed, both
+ *               decayed with a half-life of a week, so the rate follows the traffic
+ *               of the recent days. The estimate can be saved to a file and loaded by
+ *               the next run (the "-demand" option of Elevators), as a sequence of
+ *               big-endian primitives like a snapshot: the magic number, the version,
+ *               the number of floors and buckets, the time of saving, and the observed
+ *               time and the calls of each bucket.
+ * Company:      KTH
+ * Course:       ID1217 Concurrent Programming.
+ *
+ * @authors Emil Lindholm Brandt & Sabina Hauzenberger
+ * @version 1.0
+ */
+
+class DemandPredictor {
+
+    /* The first four bytes of a demand file, "GEDM" */
+    static final int MAGIC = 0x4745444D;
+    static final int VERSION = 1;
+    /* The buckets of the day */
+    private static final int BUCKET_MILLIS = 15 * 60 * 1000;
+    private static final int BUCKETS = 24 * 60 * 60 * 1000 / BUCKET_MILLIS;
+    /* The half-life of the observations in milliseconds */
+    private static final double HALF_LIFE = 7 * 24 * 60 * 60 * 1000.0;
+    /* The observed time below which a rate is taken with care, in seconds */
+    private static final double MIN_EXPOSURE = 60;
+    /* The calls in a bucket below which the predicted home floors are not trusted */
+    private static final double MIN_CALLS = 10;
+
+    private final int floors;
+    /* The decayed calls of each bucket, up at 2 * floor and down at 2 * floor + 1 */
+    private final double[][] calls;
+    /* The decayed time in seconds each bucket has been observed */
+    private final double[] exposure = new double[BUCKETS];
+    /* When each bucket was decayed last, in milliseconds */
+    private final long[] decayed = new long[BUCKETS];
+    /* Up to when the time has been added to the exposure, in milliseconds */
+    private long observed;
+
+    /**
+     * Creates an empty estimate.
+     * @param floors The number of floors.
+     */
+    DemandPredictor(int floors) {
+        this.floors = floors;
+        calls = new double[BUCKETS][2 * floors];
+        observed = System.currentTimeMillis();
+        for (int b = 0; b < BUCKETS; b++)
+            decayed[b] = observed;
+    }
+
+    /**
+     * Gives the bucket of a time of the day, in the local time zone.
+     */
+    static int bucket(long millis) {
+        long local = millis + TimeZone.getDefault().getOffset(millis);
+        return (int) (Math.floorMod(local, 24L * 60 * 60 * 1000) / BUCKET_MILLIS);
+    }
+
+    /**
+     * Decays a bucket up to a time.
+     */
+    private void decay(int b, long millis) {
+        if (millis <= decayed[b])
+            return;
+        double factor = Math.pow(0.5, (millis - decayed[b]) / HALF_LIFE);
+        for (int i = 0; i < calls[b].length; i++)
+            calls[b][i] *= factor;
+        exposure[b] *= factor;
+        decayed[b] = millis;
+    }
+
+    /**
+     * Adds the time since the last observation to the buckets it falls in.
+     */
+    private void observe(long millis) {
+        while (observed < millis) {
+            long end = Math.min(millis, (observed / BUCKET_MILLIS + 1) * BUCKET_MILLIS);
+            int b = bucket(observed);
+            decay(b, observed);
+            exposure[b] += (end - observed) / 1000.0;
+            observed = end;
+        }
+    }
+
+    /**
+     * Records a hall call.
+     * @param floor The floor of the call.
+     * @param direction The requested direction.
+     * @param millis The time of the call.
+     */
+    synchronized void record(int floor, int direction, long millis) {
+        if (floor < 0 || floor >= floors)
+            return;
+        observe(millis);
+        int b = bucket(millis);
+        decay(b, millis);
+        calls[b][2 * floor + (direction == Elevators.UP ? 0 : 1)]++;
+    }
+
+    /**
+     * Predicts the rate of hall calls at a floor in a direction at a time of the day.
+     * @param floor The floor.
+     * @param direction The direction.
+     * @param millis The time.
+     * @return The calls per second.
+     */
+    synchronized double rate(int floor, int direction, long millis) {
+        if (floor < 0 || floor >= floors)
+            return 0;
+        observe(millis);
+        int b = bucket(millis);
+        decay(b, millis);
+        return calls[b][2 * floor + (direction == Elevators.UP ? 0 : 1)] / Math.max(exposure[b], MIN_EXPOSURE);
+    }
+
+    /**
+     * Predicts the rate of hall calls at a floor in both directions at a time of the day.
+     * @param floor The floor.
+     * @param millis The time.
+     * @return The calls per second.
+     */
+    double rate(int floor, long millis) {
+        return rate(floor, Elevators.UP, millis) + rate(floor, Elevators.DOWN, millis);
+    }
+
+    /**
+     * Places a number of idle elevators where the calls are predicted at a time of the
+     * day, so the predicted calls are as near as possible to an elevator: each home floor
+     * in turn is the floor that shortens the distance from the calls to their nearest
+     * home floor the most. A second home floor at a busy floor pays only once the calls
+     * elsewhere are near enough. The floors are ordered as they are chosen, the most
+     * useful first.
+     * @param count The number of home floors.
+     * @param millis The time.
+     * @return The home floors, or null if the calls observed so far are too few.
+     */
+    synchronized int[] homeFloors(int count, long millis) {
+        observe(millis);
+        int b = bucket(millis);
+        decay(b, millis);
+        double[] weight = new double[floors];
+        double total = 0;
+        for (int f = 0; f < floors; f++) {
+            weight[f] = calls[b][2 * f] + calls[b][2 * f + 1];
+            total += weight[f];
+        }
+        if (total < MIN_CALLS || count == 0)
+            return null;
+        // The distance from each floor to its nearest home floor so far
+        int[] nearest = new int[floors];
+        Arrays.fill(nearest, Integer.MAX_VALUE);
+        int[] homes = new int[count];
+        for (int k = 0; k < count; k++) {
+            double bestGain = -1;
+            for (int h = 0; h < floors; h++) {
+                double gain = 0;
+                for (int f = 0; f < floors; f++) {
+                    int d = Math.abs(f - h);
+                    if (d < nearest[f])
+                        gain += weight[f] * (nearest[f] == Integer.MAX_VALUE ? floors - d : nearest[f] - d);
+                }
+                if (gain > bestGain) {
+                    bestGain = gain;
+                    homes[k] = h;
+                }
+            }
+            for (int f = 0; f < floors; f++)
+                nearest[f] = Math.min(nearest[f], Math.abs(f - homes[k]));
+        }
+        return homes;
+    }
+
+    /**
+     * Saves the estimate to a file. The file is replaced at once, so a crash leaves the
+     * previous estimate.
+     * @param fileName The name of the file.
+     * @throws IOException If the file cannot be written.
+     */
+    synchronized void save(String fileName) throws IOException {
+        long now = System.currentTimeMillis();
+        observe(now);
+        File file = new File(fileName), temporary = new File(fileName + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(floors);
+            out.writeInt(BUCKETS);
+            out.writeLong(now);
+            for (int b = 0; b < BUCKETS; b++) {
+                decay(b, now);
+                out.writeDouble(exposure[b]);
+                for (int i = 0; i < calls[b].length; i++)
+                    out.writeDouble(calls[b][i]);
+            }
+        } finally {
+            out.close();
+        }
+        if (!temporary.renameTo(file)) {
+            file.delete();
+            if (!temporary.renameTo(file))
+                throw new IOException("Cannot replace " + fileName);
+        }
+    }
+
+    /**
+     * Loads an estimate saved by a previous run. The floors the file and this estimate
+     * have in common are loaded, the observations decay from the time of saving.
+     * @param fileName The name of the file.
+     * @throws IOException If the file cannot be read or is not a demand file.
+     */
+    synchronized void load(String fileName) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+        try {
+            if (in.readInt() != MAGIC)
+                throw new IOException(fileName + " is not a demand file");
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new IOException("Unknown demand file version " + version);
+            int savedFloors = in.readInt(), buckets = in.readInt();
+            if (buckets != BUCKETS)
+                throw new IOException("The demand file has " + buckets + " buckets a day");
+            long saved = in.readLong();
+            for (int b = 0; b < BUCKETS; b++) {
+                exposure[b] = in.readDouble();
+                for (int i = 0; i < 2 * savedFloors; i++) {
+                    double c = in.readDouble();
+                    if (i < calls[b].length)
+                        calls[b][i] = c;
+                }
+                decayed[b] = saved;
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
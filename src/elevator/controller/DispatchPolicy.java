@@ -0,0 +1,47 @@
+package elevator.controller;
+
+/**
+ * Title:        Elevator Controller Dispatch Policy
+ * Description:  The decisions of a dispatching algorithm: which elevator takes a hall
+ *               call, and in which order an elevator serves the requests of its queues.
+ *               The controller asks the policy selected with the "-policy" option of
+ *               Elevators, see ElevatorController.POLICIES. A policy is called by many
+ *               elevator threads at once and must not keep state of its own.
+ * Company:      KTH
+ * Course:       ID1217 Concurrent Programming.
+ *
+ * @authors Emil Lindholm Brandt & Sabina Hauzenberger
+ * @version 1.0
+ */
+
+interface DispatchPolicy {
+
+    /**
+     * Gives the name of the policy, as given to the "-policy" option.
+     * @return The name.
+     */
+    String getName();
+
+    /**
+     * Chooses the elevator that takes a hall call.
+     * @param elevators All elevators.
+     * @param level The floor of the call, floor 4 as 400.
+     * @param direction The requested direction.
+     * @param floorsPerSecond The velocity of the elevators.
+     * @param now The time of the call in nanoseconds.
+     * @param demand The calls predicted at each floor.
+     * @return The elevator.
+     */
+    ElevatorState assign(ElevatorState[] elevators, int level, int direction, double floorsPerSecond, long now,
+                         DemandPredictor demand);
+
+    /**
+     * Chooses the next stop of an elevator. Called with the lock of the elevator held.
+     * @param level The position of the elevator, floor 4 as 400.
+     * @param direction The direction the elevator has been moving in.
+     * @param upQueue The requests to stop on the way up.
+     * @param downQueue The requests to stop on the way down.
+     * @return The floor number of the next stop, -1 if there are no requests.
+     */
+    int nextStop(int level, int direction, FloorRequests upQueue, FloorRequests downQueue);
+}
@@ -5,6 +5,11 @@ import elevator.Elevators;
 import java.io.*;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Title:        Elevator Main Controller
@@ -20,9 +25,40 @@ import java.net.Socket;
 
 public class ElevatorController implements Runnable {
 
+    /**
+     * The names of the dispatch policies that can be selected with the "-policy" option.
+     * The first one is the default.
+     */
+    public static final String[] POLICIES = {"eta", "stops", "nearest", "rollout"};
+
     private Socket socket;
-    private PrintWriter writer;
-    private ElevatorState[] elevatorStates;
+    /* Writes the commands to the socket on a thread of its own */
+    private volatile CommandPipeline commands;
+    private volatile ElevatorState[] elevatorStates;
+    /* States read from a snapshot before the controller has started, if any */
+    private volatile ElevatorState[] restoredStates;
+    /* The time from a call to the motor command it results in */
+    private final Latency latency = new Latency("Call to motor command latency", "ms");
+    /* The time a hall call waits until the doors of an elevator open at its floor */
+    private final Latency waiting = new Latency("Hall call waiting time", "s");
+    /* The velocity of the elevators in floor units per millisecond, from the "v" messages */
+    private volatile double velocity = Elevators.step / Elevators.DefaultTickPeriod;
+    /* Decides which elevator takes a hall call and the order of the stops */
+    private volatile DispatchPolicy policy = createPolicy(POLICIES[0]);
+    /* Waits for the rollouts of the hall calls in turn and assigns them, with the rollout policy */
+    private final ExecutorService rolloutWaiter = Executors.newSingleThreadExecutor();
+    /* The hall calls predicted at each floor, from the calls so far and the previous runs */
+    private volatile DemandPredictor demand;
+    /* Classifies the traffic of the last minutes, which the dispatching adapts to */
+    private volatile TrafficMonitor traffic;
+    /* The period of saving the predicted calls in milliseconds */
+    private static final int DEMAND_SAVE_PERIOD = 60000;
+    /* Spreads the idle elevators over the building, null if they stay where they stop */
+    private Parking parking;
+    /* The period of the parking pass in milliseconds */
+    private static final int PARK_PERIOD = 500;
+    /* The number of hall calls moved to another elevator by the reassignment */
+    private long reassigned;
 
     public ElevatorController() {
     }
@@ -39,23 +75,206 @@ public class ElevatorController implements Runnable {
     /**
      * Initiates the states of every elevator. They are given an ID ranging
      * from 1-N, and every elevator starts at floor 0 and direction UP.
-     * Starts every elevator state as a thread as well.
+     * Starts every elevator state as a thread as well, or on a shared scheduler
+     * if the application has started with the "-controller n" option.
      */
     private void initiateStates() {
+        ScheduledExecutorService scheduler = null;
+        if (Elevators.controllerThreads > 0)
+            scheduler = Executors.newScheduledThreadPool(Elevators.controllerThreads);
+        ElevatorState[] restored = restoredStates;
         for (int i = 0; i < elevatorStates.length; i++) {
-            elevatorStates[i] = new ElevatorState( 0, i+1, this);
-            new Thread(elevatorStates[i]).start();
+            if (restored != null && i < restored.length)
+                elevatorStates[i] = restored[i];
+            else
+                elevatorStates[i] = new ElevatorState( 0, i+1, this);
+            if (scheduler != null)
+                elevatorStates[i].start(scheduler);
+            else
+                new Thread(elevatorStates[i]).start();
         }
 
     }
 
     /**
-     * Sends a String command through the TCP connection.
+     * Writes the states and queues of all elevators to a snapshot of the simulation.
+     * Nothing but the count 0 is written if the controller has not started yet.
+     * @param out The output of the snapshot.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public void writeState(DataOutput out) throws IOException {
+        ElevatorState[] states = elevatorStates;
+        int count = 0;
+        if (states != null)
+            while (count < states.length && states[count] != null) count++;
+        out.writeInt(count);
+        for (int i = 0; i < count; i++)
+            states[i].writeState(out);
+    }
+
+    /**
+     * Reads the states and queues of the elevators from a snapshot. Must be called
+     * before the controller connects; the elevators start from the restored states.
+     * @param in The input of the snapshot.
+     * @throws IOException If the snapshot cannot be read.
+     */
+    public void readState(DataInput in) throws IOException {
+        ElevatorState[] states = new ElevatorState[in.readInt()];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = new ElevatorState(0, i+1, this);
+            states[i].readState(in);
+        }
+        restoredStates = states;
+    }
+
+    /**
+     * Creates a dispatch policy.
+     * @param name One of POLICIES.
+     * @return The policy, the default one if the name is unknown.
+     */
+    static DispatchPolicy createPolicy(String name) {
+        if (name.equals("stops"))
+            return new StopCountPolicy();
+        if (name.equals("nearest"))
+            return new NearestPolicy();
+        if (name.equals("rollout"))
+            return new RolloutPolicy(Elevators.rolloutBudget);
+        return new EtaPolicy();
+    }
+
+    /**
+     * Gives the dispatch policy of the controller.
+     * @return The policy.
+     */
+    DispatchPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Gives the latency statistics of the elevator states.
+     * @return The time from calls to motor commands.
+     */
+    Latency getLatency() {
+        return latency;
+    }
+
+    /**
+     * Gives the waiting time statistics of hall calls.
+     * @return The time from hall calls to the doors opening at their floors.
+     */
+    Latency getWaiting() {
+        return waiting;
+    }
+
+    /**
+     * Updates the velocity of the elevators, as reported by a "v" message.
+     * @param velocity The velocity in floor units per millisecond.
+     */
+    void setVelocity(double velocity) {
+        if (velocity > 0)
+            this.velocity = velocity;
+    }
+
+    /**
+     * Gives a one-line report of the waiting time of hall calls.
+     * @return The report.
+     */
+    public String getWaitingReport() {
+        return waiting.report();
+    }
+
+    /**
+     * Gives a one-line report of how often the doors have been opened again as they
+     * closed, and closed early as the passengers had pressed their floors.
+     * @return The report.
+     */
+    public String getDoorReport() {
+        long reopened = 0, shortened = 0;
+        ElevatorState[] states = elevatorStates;
+        if (states != null) {
+            for (ElevatorState e : states) {
+                if (e == null)
+                    continue;
+                reopened += e.getReopenedCount();
+                shortened += e.getShortenedCount();
+            }
+        }
+        return "Doors reopened: " + reopened + ", closed early: " + shortened;
+    }
+
+    /**
+     * Gives a one-line report of the floor indicator updates sent, and of those left
+     * out as the floor shown had not changed.
+     * @return The report.
+     */
+    public String getDisplayReport() {
+        long sent = 0, suppressed = 0;
+        ElevatorState[] states = elevatorStates;
+        if (states != null) {
+            for (ElevatorState e : states) {
+                if (e == null)
+                    continue;
+                sent += e.getDisplayedCount();
+                suppressed += e.getDisplaySuppressedCount();
+            }
+        }
+        return "Floor indicator updates sent: " + sent + ", suppressed: " + suppressed;
+    }
+
+    /**
+     * Gives a one-line report of the time from calls to motor commands.
+     * @return The report.
+     */
+    public String getLatencyReport() {
+        return latency.report();
+    }
+
+    /**
+     * Gives a two-line report of the commands written to the socket: the batches and
+     * the depth of the queue, and the time from a command to the flush that sent it.
+     * @return The report.
+     */
+    public String getCommandReport() {
+        CommandPipeline commands = this.commands;
+        if (commands == null)
+            return "Commands written: none";
+        return commands.report() + System.lineSeparator() + commands.latencyReport();
+    }
+
+    /**
+     * Sends a String command through the TCP connection. The command is queued and
+     * written by the thread of the command pipeline, so the caller never waits for the socket.
      * @param command The command to send to the main application.
      */
     public void sendCommand(String command) {
-        writer.println(command);
-        writer.flush();
+        commands.send(command);
+    }
+
+    /**
+     * Sends an "m" command, see sendCommand.
+     * @param elevatorID The elevator.
+     * @param direction The direction of the motor, 0 to stop it.
+     */
+    void sendMotor(int elevatorID, int direction) {
+        commands.motor(elevatorID, direction);
+    }
+
+    /**
+     * Sends a "d" command, see sendCommand.
+     * @param elevatorID The elevator.
+     * @param direction 1 to open the doors, -1 to close them.
+     */
+    void sendDoor(int elevatorID, int direction) {
+        commands.door(elevatorID, direction);
+    }
+
+    /**
+     * Sends an "s" command, see sendCommand.
+     * @param elevatorID The elevator.
+     * @param floor The floor to show.
+     */
+    void sendScale(int elevatorID, int floor) {
+        commands.scale(elevatorID, floor);
     }
 
     /**
@@ -73,15 +292,134 @@ public class ElevatorController implements Runnable {
     public void run() {
         initiateController();
         initiateStates();
+        startDispatcher();
+        // Listen only when every elevator state exists, as a large fleet takes a while to start
+        new Thread(new Listener(this)).start();
+    }
+
+    /**
+     * Starts the periodic passes over all elevators on a thread of their own: the
+     * reassignment of hall calls, unless the application has started with "-reassign 0"
+     * or there is only one elevator, and the parking of idle elevators, unless it has
+     * started with "-park none".
+     */
+    private void startDispatcher() {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        int period = Elevators.reassignPeriod;
+        if (period > 0 && elevatorStates.length > 1) {
+            timer.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    try {
+                        reassignCalls();
+                    } catch (RuntimeException e) {
+                        // A failed pass must not cancel the next ones
+                        e.printStackTrace();
+                    }
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
+        if (!Elevators.parkFloors.equals("none")) {
+            parking = new Parking(Elevators.parkFloors, elevatorStates.length, Elevators.topFloor, demand);
+            timer.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    try {
+                        parkIdleElevators();
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }, PARK_PERIOD, PARK_PERIOD, TimeUnit.MILLISECONDS);
+        }
+        if (Elevators.demandFile != null) {
+            timer.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    saveDemand();
+                }
+            }, DEMAND_SAVE_PERIOD, DEMAND_SAVE_PERIOD, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Creates the demand predictor, with the calls predicted by the previous runs
+     * if the application has started with the "-demand file" option and the file exists.
+     */
+    private void loadDemand() {
+        demand = new DemandPredictor(Elevators.topFloor + 1);
+        String file = Elevators.demandFile;
+        if (file == null || !new File(file).exists())
+            return;
+        try {
+            demand.load(file);
+            EventLog.info("Predicted demand loaded from %s", file);
+        } catch (IOException e) {
+            System.err.println("Cannot load the predicted demand, starting without. See below.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Saves the predicted calls for the next runs, if the application has started with
+     * the "-demand file" option.
+     */
+    private void saveDemand() {
+        if (Elevators.demandFile == null)
+            return;
+        try {
+            demand.save(Elevators.demandFile);
+        } catch (IOException e) {
+            System.err.println("Cannot save the predicted demand. See below.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Gives the hall calls predicted at each floor.
+     * @return The demand predictor.
+     */
+    DemandPredictor getDemand() {
+        return demand;
+    }
+
+    /**
+     * Gives the classification of the current traffic.
+     * @return The traffic monitor.
+     */
+    TrafficMonitor getTraffic() {
+        return traffic;
+    }
+
+    /**
+     * Sends the elevators that have been idle for a while to their home floors.
+     */
+    synchronized void parkIdleElevators() {
+        parking.run(elevatorStates, System.nanoTime(), traffic);
+    }
+
+    /**
+     * Reassigns all hall calls not served yet to the elevators jointly, so a call
+     * moves away from an elevator that has been delayed, e.g. by a run of cab calls,
+     * to one that has become free. New calls wait until the pass is done.
+     */
+    synchronized void reassignCalls() {
+        Reassignment reassignment = new Reassignment(elevatorStates, traffic);
+        reassigned += reassignment.run(velocity * 1000, System.nanoTime());
+    }
+
+    /**
+     * Gives the number of hall calls moved to another elevator by the reassignment.
+     * @return The number of calls moved.
+     */
+    public synchronized long getReassignedCount() {
+        return reassigned;
     }
 
     /**
      * Initiates the controller.
-     * Creates the elevator states and sets up the TCP socket and starts the Listener.
+     * Creates the elevator states and sets up the TCP socket.
      */
     private void initiateController() {
-        elevatorStates = new ElevatorState[Elevators.numberOfElevators];
-        System.out.println("Number of elevators: " + elevatorStates.length);
+        // The application parses its options while we connect, and listens only once it
+        // has, so they are read after the connection
         do {
             try {
                 Thread.sleep(100);
@@ -93,16 +431,41 @@ public class ElevatorController implements Runnable {
 //                e.printStackTrace();
             }
         } while (socket == null);
-        System.out.println("socket was connected");
-
-        this.writer = null;
         try {
-            writer = new PrintWriter(socket.getOutputStream());
+            EventLog.open(Elevators.logFile, Elevators.debug);
         } catch (IOException e) {
+            System.err.println("Cannot open the event log, logging to the standard output. See below.");
             e.printStackTrace();
         }
+        EventLog.info("socket was connected");
+        elevatorStates = new ElevatorState[Elevators.numberOfElevators];
+        EventLog.info("Number of elevators: %d", elevatorStates.length);
+        policy = createPolicy(Elevators.dispatchPolicy);
+        loadDemand();
+        traffic = new TrafficMonitor(Elevators.topFloor);
+        EventLog.info("Dispatch policy: %s", policy.getName());
+        // Report how fast the elevators reacted to calls when the application exits
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                EventLog.close();
+                System.out.println(waiting.report());
+                System.out.println(latency.report());
+                System.out.println("Hall calls reassigned: " + reassigned);
+                System.out.println("Traffic mode switches: " + traffic.getSwitchCount());
+                System.out.println(getDoorReport());
+                System.out.println(getDisplayReport());
+                System.out.println(getCommandReport());
+                saveDemand();
+            }
+        });
 
-        new Thread(new Listener(this)).start();
+        try {
+            commands = new CommandPipeline(new PrintWriter(socket.getOutputStream()));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        // Ask for the current velocity, the answer is a "v" message
+        sendCommand("v");
     }
 
     /**
@@ -111,43 +474,78 @@ public class ElevatorController implements Runnable {
      * @param destination Which floor the elevator wishes to go to
      */
     void moveElevator(int elevatorID, int destination) {
+        traffic.cabCall(destination / 100, System.nanoTime());
         elevatorStates[elevatorID-1].addRequest(destination);
-        for (ElevatorState e : elevatorStates) {
-            System.out.println(e);
-            e.printMyQueues();
-            System.out.println();
-        }
+        logStates();
     }
 
 
     /**
-     * The great algorithm for deciding which elevator will server which request.
+     * The great algorithm for deciding which elevator will server which request,
+     * as chosen by the dispatch policy among the elevators the traffic mode lets take it.
      * @param destination The destination floor
      * @param direction Which direction caller in mind wants to travel in
      */
-    void moveToFloor(int destination, int direction) {
-        int lowestCost = 10000;
-        int bestID = 0;
-
-        for (ElevatorState e : elevatorStates) {
-            int cost = e.calcStopsBeforeService(destination, direction);
-            System.out.printf("Elevator %d has cost %d\n", e.getId(), cost);
-            if (cost < lowestCost) {
-                lowestCost = cost;
-                bestID = e.getId();
+    void moveToFloor(final int destination, final int direction) {
+        final long now = System.nanoTime();
+        final RolloutPolicy.Rollouts rollouts;
+        synchronized (this) {
+            demand.record(destination / 100, direction, System.currentTimeMillis());
+            traffic.hallCall(destination / 100, direction, now);
+            ElevatorState[] candidates = candidates(destination / 100, direction, now);
+            if (!(policy instanceof RolloutPolicy)) {
+                assignCall(policy.assign(candidates, destination, direction, velocity * 1000, now, demand),
+                        destination, direction, now);
+                logStates();
+                return;
             }
+            // The models are copied under the lock, the rollouts play them outside it
+            rollouts = ((RolloutPolicy) policy).start(candidates, destination, direction, velocity * 1000, now);
         }
+        // The Listener goes on with the position updates while the rollouts play
+        rolloutWaiter.execute(new Runnable() {
+            public void run() {
+                ElevatorState best = rollouts.best();
+                synchronized (ElevatorController.this) {
+                    assignCall(best, destination, direction, now);
+                }
+                logStates();
+            }
+        });
+    }
 
-        System.out.printf("===> ELEVATOR #%d got the job!\n", bestID);
+    /**
+     * Gives a hall call to the elevator chosen for it. Called with the lock held.
+     */
+    private void assignCall(ElevatorState best, int destination, int direction, long now) {
+        EventLog.info("===> ELEVATOR #%d got the job!", best.getId());
+        best.addCall(destination, direction, now);
+    }
 
-        elevatorStates[bestID-1].addRequest(destination, direction);
+    /**
+     * Logs the state and queues of every elevator, if the application has started with
+     * the "-debug" option.
+     */
+    private void logStates() {
+        if (!EventLog.isDebug())
+            return;
+        for (ElevatorState e : elevatorStates)
+            EventLog.debug("%s", e.describe());
+    }
 
-        // For debug
-        for (ElevatorState e : elevatorStates) {
-            System.out.println(e);
-            e.printMyQueues();
-            System.out.println();
-        }
+    /**
+     * Gives the elevators that may take a hall call in the current traffic mode,
+     * e.g. those of the sector of a down call in down-peak.
+     */
+    private ElevatorState[] candidates(int floor, int direction, long now) {
+        ElevatorState[] states = elevatorStates;
+        if (traffic.getMode(now) != TrafficMonitor.DOWN_PEAK)
+            return states;
+        ArrayList<ElevatorState> allowed = new ArrayList<ElevatorState>(states.length);
+        for (ElevatorState e : states)
+            if (traffic.mayServe(e, states.length, floor, direction))
+                allowed.add(e);
+        return allowed.isEmpty() ? states : allowed.toArray(new ElevatorState[allowed.size()]);
     }
 
     /**
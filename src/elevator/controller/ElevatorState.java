@@ -1,14 +1,25 @@
 package elevator.controller;
 
 import elevator.Elevators;
-import java.util.LinkedList;
+import elevator.MotionProfile;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * Title:        Elevator Controller State
  * Description:  This object encapsulates a elevator state, and has helper
  *               methods to compute cost/rank for taking a request and more.
  *               It also makes asynchronous (but synchronized) decisions on
- *               what to do next.
+ *               what to do next. The decisions are event driven: the thread
+ *               waits until a position update or a request arrives, or until
+ *               the door timer expires. Instead of a thread of its own, the
+ *               state can also run on a scheduler shared by all elevators.
  * Company:      KTH
  * Course:       ID1217 Concurrent Programming.
  *
@@ -19,20 +30,138 @@ import java.util.LinkedList;
 public class ElevatorState implements Runnable {
 
     /* The floor variable will repserent level 4 as 400 etc, due to double vs integer rounding comparison problems */
-    private int floor;
+    private volatile int floor;
     /* 1 = UP | -1 = DOWN */
-    private int direction = Elevators.UP;
+    private volatile int direction = Elevators.UP;
     /* Indicates whether the elevator is serving a request or not */
-    private boolean idle = true;
+    private volatile boolean idle = true;
+    /* When the elevator has become idle in nanoseconds */
+    private long idleSince = System.nanoTime();
+    /* The floor the idle elevator is sent to by the parking, -1 if none */
+    private int parkLevel = -1;
+    /* Whether the current target is the parking floor, where the doors stay closed */
+    private boolean parking;
     /* My ID, ranges from 1 to N */
     final private int id;
 
-    /* The up & down queues containing requests for each direction. */
-    private LinkedList<Integer> upQueue;
-    private LinkedList<Integer> downQueue;
+    /* The levels of a floor, as the floor variable represents level 4 as 400 */
+    static final int LEVEL = 100;
+    /* How near a floor in levels the elevator is taken to have reached it */
+    private static final int REACHED_MARGIN = 6;
+
+    /* The up & down queues containing requests for each direction, indexed by floor. */
+    private FloorRequests upQueue;
+    private FloorRequests downQueue;
+    /* The requests of the queues that are hall calls not served yet, and the cab calls */
+    private FloorRequests upCalls, downCalls;
+    private FloorRequests upStops, downStops;
 
     private ElevatorController controller;
 
+    /* The door cycle: the doors are kept open, then given time to close */
+    private static final int DOORS_IDLE = 0, DOORS_OPEN = 1, DOORS_CLOSING = 2;
+    private static final long OPEN_NANOS = 2000000000L, CLOSING_NANOS = 500000000L;
+    /* How long the doors stay open once the passengers have pressed their floors, and
+       at a stop where no one has called, only to let passengers out */
+    private static final long SHORT_OPEN_NANOS = 500000000L, ALIGHT_NANOS = 1000000000L;
+    static final double DOOR_SECONDS = (OPEN_NANOS + CLOSING_NANOS) / 1e9;
+    private int doors = DOORS_IDLE;
+    private long doorDeadline;
+    /* When the current door cycle ends, 0 if the doors are idle. Read by the dispatcher */
+    private volatile long doorsClosedAt;
+    /* Set when a request for the floor we stand at, or a cab call to another floor,
+       has arrived since the door cycle last looked */
+    private boolean requestHere, cabCallAway;
+    /* The number of times the doors have been reopened or closed early. Written by
+       the thread of the elevator only */
+    private volatile long reopened, shortened;
+
+    /* When the hall call at each floor and direction (up at 2 * floor, down at
+       2 * floor + 1) has been made, 0 if none */
+    private long[] callSince;
+    /* The limits of motion of the cabins, null if they start and stop instantly */
+    private final MotionProfile profile;
+
+    /**
+     * What a new hall call at each floor and direction would cost the elevator, up at
+     * 2 * floor and down at 2 * floor + 1. The table is computed under the lock each
+     * time the queues, direction or idle flag change, or the elevator passes a floor,
+     * in one sweep along the route, so the dispatch reads one entry per elevator
+     * without taking the lock of the elevator. Between two floors only the first leg
+     * of the route changes, so each entry keeps the floor the first leg ends at and
+     * the travel after it, and the read adds the first leg from the current position.
+     * Two tables are kept and written in turn, the one not published, so no table is
+     * allocated after the elevator has been created; a reader that has come upon the
+     * table being written, as its write lock tells, reads the published one again.
+     */
+    static final class Costs {
+        /* The travel after the first leg, in seconds at one floor per second */
+        private final float[] travel;
+        /* The floor the first leg ends at, from which the travel is counted */
+        private final int[] anchor;
+        /* The door cycles at the stops served before a call */
+        private final int[] doorCycles;
+        /* The stops before a call, see calcStopsBeforeService, unless it has been reached */
+        private final int[] stops;
+        /* The position, floor 4 as 400 */
+        private int level;
+        /* Whether the elevator is idle without requests */
+        private boolean noRequests;
+        /* Held while the table is written, the readers read optimistically */
+        private final StampedLock lock = new StampedLock();
+
+        private Costs(int floors) {
+            travel = new float[2 * floors];
+            anchor = new int[2 * floors];
+            doorCycles = new int[2 * floors];
+            stops = new int[2 * floors];
+        }
+
+        /**
+         * Tells whether the costs cover a floor, i.e. it is not above the top floor
+         * the elevator has been created for.
+         * @param level The floor.
+         * @return True if the floor is covered.
+         */
+        boolean covers(int level) {
+            return level >= 0 && 2 * (level / LEVEL) < travel.length;
+        }
+    }
+
+    /* The costs of the current state, published under the lock and read without it */
+    private volatile Costs costs;
+    /* The costs written next, those published before the current ones */
+    private Costs spareCosts;
+
+    /* Set when an input has arrived that the thread has not reacted to yet */
+    private boolean changed = true;
+    /* The current and the previous target, -1 and -2 if none */
+    private int target = -1;
+    private int prevTarget = -2;
+    /* The floor shown on the scale, -1 before the first update */
+    private int shownFloor = -1;
+    /* The "s" commands sent, and those left out as the floor shown had not changed */
+    private volatile long displayed, displaySuppressed;
+    /* When the oldest request not yet followed by a motor command arrived, 0 if none */
+    private long pendingSince;
+
+    /* The shared scheduler, null if the state runs on a thread of its own */
+    private ScheduledExecutorService scheduler;
+    /* Whether a reaction is queued or running on the scheduler */
+    private boolean scheduled;
+    /* The door deadline a timer has been scheduled for */
+    private long timerDeadline;
+    private final Runnable reaction = new Runnable() {
+        public void run() {
+            reactOnce();
+        }
+    };
+    private final Runnable timer = new Runnable() {
+        public void run() {
+            wake();
+        }
+    };
+
     /**
      * Creates a state of a elevator, containing its current floor, direction and a unique id.
      * @param floor The initial floor of the elevator. Should be 0.
@@ -44,40 +173,34 @@ public class ElevatorState implements Runnable {
         this.id = id;
         this.controller = controller;
 
-        upQueue = new LinkedList<>();
-        downQueue = new LinkedList<>();
+        upQueue = new FloorRequests(Elevators.topFloor + 1);
+        downQueue = new FloorRequests(Elevators.topFloor + 1);
+        upCalls = new FloorRequests(Elevators.topFloor + 1);
+        downCalls = new FloorRequests(Elevators.topFloor + 1);
+        upStops = new FloorRequests(Elevators.topFloor + 1);
+        downStops = new FloorRequests(Elevators.topFloor + 1);
+        callSince = new long[2 * (Elevators.topFloor + 1)];
+        profile = (Elevators.acceleration > 0) ?
+                new MotionProfile(Elevators.step, Elevators.acceleration, Elevators.jerk) : null;
+        costs = new Costs(Elevators.topFloor + 1);
+        spareCosts = new Costs(Elevators.topFloor + 1);
+        publishCosts();
     }
 
     /**
-     * Ads a request on the down queue in the proper order.
+     * Ads a request on the down queue. The down queue is served from the highest floor.
      * @param level The level which to go to.
      */
     private void addDownRequest(int level) {
-        if (downQueue.contains(level))
-            return;
-        for (int i = 0; i < downQueue.size(); i++) {
-            if (level > downQueue.get(i)) {
-                downQueue.add(i, level);
-                return;
-            }
-        }
-        downQueue.add(level);
+        downQueue.add(level / LEVEL);
     }
 
     /**
-     * Ads a request on the up queue in the proper order.
+     * Ads a request on the up queue. The up queue is served from the lowest floor.
      * @param level The level which to go to.
      */
     private void addUpRequest(int level) {
-        if (upQueue.contains(level))
-            return;
-        for (int i = 0; i < upQueue.size(); i++) {
-            if (level < upQueue.get(i)) {
-                upQueue.add(i, level);
-                return;
-            }
-        }
-        upQueue.add(level);
+        upQueue.add(level / LEVEL);
     }
 
     /**
@@ -86,10 +209,161 @@ public class ElevatorState implements Runnable {
      * @param direction The direction they want to travel in
      */
     synchronized void addRequest(int destination, int direction) {
+        parkLevel = -1;
+        if (reachedFloor(destination))
+            requestHere = true;
         if (direction == Elevators.UP)
             addUpRequest(destination);
         else
             addDownRequest(destination);
+        if (pendingSince == 0)
+            pendingSince = System.nanoTime();
+        publishCosts();
+        wake();
+    }
+
+    /**
+     * Used for when a hall call has been assigned to this elevator. The time the call
+     * waits until the doors open at its floor is recorded.
+     * @param destination The floor where the button was pressed
+     * @param direction The direction they want to travel in
+     * @param now The time of the call in nanoseconds.
+     */
+    synchronized void addCall(int destination, int direction, long now) {
+        int i = callIndex(destination / LEVEL, direction);
+        if (i >= callSince.length) {
+            long[] grown = new long[i + 2];
+            System.arraycopy(callSince, 0, grown, 0, callSince.length);
+            callSince = grown;
+        }
+        if (callSince[i] == 0 || now - callSince[i] < 0)
+            callSince[i] = now;
+        if (direction == Elevators.UP)
+            upCalls.add(destination / LEVEL);
+        else
+            downCalls.add(destination / LEVEL);
+        addRequest(destination, direction);
+    }
+
+    /**
+     * Gives the index of a hall call in callSince.
+     */
+    static int callIndex(int floor, int direction) {
+        return 2 * floor + (direction == Elevators.UP ? 0 : 1);
+    }
+
+    /**
+     * Records the waiting time of the hall calls at a floor whose doors open. From now
+     * on the calls are served and will not be moved to another elevator. The time is
+     * read under the lock, as a call may have been added after the reaction has begun.
+     * @return True if there were hall calls at the floor.
+     */
+    private synchronized boolean served(int level) {
+        long now = System.nanoTime();
+        int f = level / LEVEL;
+        if (f < 0)
+            return false;
+        boolean called = false;
+        for (int i = 2 * f; i < 2 * f + 2 && i < callSince.length; i++) {
+            if (callSince[i] != 0) {
+                controller.getWaiting().record(now - callSince[i]);
+                callSince[i] = 0;
+                called = true;
+            }
+        }
+        upCalls.remove(f);
+        downCalls.remove(f);
+        return called;
+    }
+
+    /**
+     * Gives the hall calls assigned to this elevator and not served yet to a reassignment.
+     * @param reassignment The reassignment that collects the calls.
+     */
+    synchronized void collectCalls(Reassignment reassignment) {
+        for (int f = upCalls.lowest(); f != -1; f = upCalls.nextAtOrAbove(f + 1))
+            reassignment.add(this, f * LEVEL, Elevators.UP, callSince[callIndex(f, Elevators.UP)]);
+        for (int f = downCalls.lowest(); f != -1; f = downCalls.nextAtOrAbove(f + 1))
+            reassignment.add(this, f * LEVEL, Elevators.DOWN, callSince[callIndex(f, Elevators.DOWN)]);
+    }
+
+    /**
+     * Moves a hall call not served yet to another elevator. Both elevators are locked,
+     * in the order of their IDs, so the call is in the queues of exactly one of them
+     * at any time. A cab call to the same floor stays.
+     * @param to The elevator to move the call to.
+     * @param level The floor of the call.
+     * @param direction The direction of the call.
+     * @return True if the call has been moved, false if it has been served meanwhile.
+     */
+    boolean moveCall(ElevatorState to, int level, int direction) {
+        ElevatorState first = (id < to.id) ? this : to, second = (id < to.id) ? to : this;
+        synchronized (first) {
+            synchronized (second) {
+                int f = level / LEVEL;
+                FloorRequests calls = (direction == Elevators.UP) ? upCalls : downCalls;
+                if (!calls.contains(f))
+                    return false;
+                calls.remove(f);
+                if (direction == Elevators.UP && !upStops.contains(f))
+                    upQueue.remove(f);
+                else if (direction == Elevators.DOWN && !downStops.contains(f))
+                    downQueue.remove(f);
+                int i = callIndex(f, direction);
+                long since = callSince[i];
+                callSince[i] = 0;
+                publishCosts();
+                to.addCall(level, direction, since);
+                wake();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Wakes up the thread of the elevator to react to a new input.
+     */
+    private synchronized void wake() {
+        changed = true;
+        if (scheduler == null) {
+            notify();
+        } else if (!scheduled) {
+            scheduled = true;
+            scheduler.execute(reaction);
+        }
+    }
+
+    /**
+     * Runs the state on a scheduler shared by many elevators instead of a thread
+     * of its own: each input queues one reaction, and the door timer is a scheduled task.
+     * @param scheduler The shared scheduler.
+     */
+    void start(ScheduledExecutorService scheduler) {
+        synchronized (this) {
+            this.scheduler = scheduler;
+        }
+        wake();
+    }
+
+    /**
+     * Reacts to the inputs that have arrived on the shared scheduler. Only one reaction
+     * of an elevator is queued or running at a time; inputs arriving meanwhile queue the next one.
+     */
+    private void reactOnce() {
+        synchronized (this) {
+            changed = false;
+        }
+        react(System.nanoTime());
+        synchronized (this) {
+            if (doors != DOORS_IDLE && doorDeadline != timerDeadline) {
+                timerDeadline = doorDeadline;
+                scheduler.schedule(timer, doorDeadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+            if (changed)
+                scheduler.execute(reaction);
+            else
+                scheduled = false;
+        }
     }
 
     /**
@@ -97,28 +371,46 @@ public class ElevatorState implements Runnable {
      * @param destination The destination floor.
      */
     synchronized void addRequest(int destination) {
-        System.out.println("Adding request on elevator" + id + ", destination = " + destination);
+        EventLog.debug("Adding request on elevator%d, destination = %d", id, destination);
+        if (reachedFloor(destination)) {
+            // The button of the floor we stand at opens the doors again
+            requestHere = true;
+            wake();
+        } else {
+            cabCallAway = true;
+        }
         if (this.direction == Elevators.UP) {
             if ((destination - floor) > 0) {
                 // Your destination is on your way up...
-                addRequest(destination, Elevators.UP);
+                addStop(destination, Elevators.UP);
             } else if ((destination - floor) < 0) {
                 // Your destination was passed and is served on the way down
-                addRequest(destination, Elevators.DOWN);
+                addStop(destination, Elevators.DOWN);
             }
         } else if (this.direction == Elevators.DOWN) {
             if ((floor - destination) > 0) {
                 // Your destination if on your way down...
-                addRequest(destination, Elevators.DOWN);
+                addStop(destination, Elevators.DOWN);
             } else if ((floor - destination) < 0) {
                 // Your destination was passed and is served on the way up
-                addRequest(destination, Elevators.UP);
+                addStop(destination, Elevators.UP);
             }
         } else {
-            System.out.println("i got elsed");
+            EventLog.debug("i got elsed");
         }
     }
 
+    /**
+     * Adds a cab call, which stays with this elevator.
+     */
+    private void addStop(int destination, int direction) {
+        if (direction == Elevators.UP)
+            upStops.add(destination / LEVEL);
+        else
+            downStops.add(destination / LEVEL);
+        addRequest(destination, direction);
+    }
+
     /**
      * Calculates the cost/rank for the elevator to potentially service a request.
      * Lower cost/rank is better.
@@ -127,13 +419,19 @@ public class ElevatorState implements Runnable {
      * @return The cost/rank.
      */
     synchronized int calcStopsBeforeService(int targetFloor, int requestedDirection) {
-        // We are counting # of stops. Not distance.
-        int sum = 0;
-
         // If we're there
         if (reachedFloor(targetFloor))
-            return sum;
-        sum++;
+            return 0;
+        return stopsBefore(targetFloor, requestedDirection);
+    }
+
+    /**
+     * Counts the stops before a request for calcStopsBeforeService, for a floor that
+     * has not been reached. Called with the lock held.
+     */
+    private int stopsBefore(int targetFloor, int requestedDirection) {
+        // We are counting # of stops. Not distance.
+        int sum = 1;
 
         // If we're not doing anything
         if (idle)
@@ -141,7 +439,7 @@ public class ElevatorState implements Runnable {
         sum++;
 
         // Optimization if we are already on our way there, in the right direction
-        if (upQueue.contains(targetFloor) || downQueue.contains(targetFloor))
+        if (upQueue.contains(targetFloor / LEVEL) || downQueue.contains(targetFloor / LEVEL))
             return sum;
         sum++;
 
@@ -152,83 +450,503 @@ public class ElevatorState implements Runnable {
 
                 // If they are above us, and wants to go in the same direction
                 if (targetFloor - this.floor > 0) {
-                    for (Integer floor : upQueue) {
-                        if (floor > targetFloor)
-                            break;
-                        sum++;
-                    }
+                    // The stops on the way up to them
+                    sum += upQueue.countBetween(0, targetFloor / LEVEL);
                     return sum;
                 } else { // They are below us and wants to go with us
                     // Calc the cost for going up
-                    sum += !upQueue.isEmpty() ? upQueue.size() : 0;
+                    sum += upQueue.size();
 
                     // Cost the cost for going down
-                    sum += !downQueue.isEmpty() ? downQueue.size() : 0;
+                    sum += downQueue.size();
                 }
 
             } else { // They want to go down
                 // Calc the cost for going up
-                sum += !upQueue.isEmpty() ? upQueue.size() : 0;
+                sum += upQueue.size();
             }
         } else { // If we're going down
 
             if (requestedDirection == Elevators.DOWN) {
                 // They are below us, and wants to go in the same direction
                 if (this.floor - targetFloor > 0) {
-                    for (Integer floor : downQueue) {
-                        if (floor < targetFloor)
-                            break;
-                        sum++;
-                    }
+                    // The stops on the way down to them
+                    sum += downQueue.countBetween((targetFloor + LEVEL - 1) / LEVEL, Integer.MAX_VALUE);
                 } else {
                     // Cost the cost for going down
-                    sum += !downQueue.isEmpty() ? downQueue.size() : 0;
+                    sum += downQueue.size();
 
                     // Calc the cost for going up
-                    sum += !upQueue.isEmpty() ? upQueue.size() : 0;
+                    sum += upQueue.size();
                 }
             } else {
                 // Cost for going down
-                sum += !downQueue.isEmpty() ? downQueue.size() : 0;
+                sum += downQueue.size();
             }
         }
-        System.out.printf("==== DEBUG ===\nElevator #%d calculated the cost for going to %d to: %d\n", id, targetFloor, sum);
         return sum;
     }
 
     /**
-     * Stops the elevator.
+     * Estimates the time until the elevator arrives at a hall call, if the call was
+     * assigned to it: the rest of the current door cycle, the travel between the stops
+     * it serves before, in the order getNextDestination serves them (ahead of us in our
+     * direction, the other direction, the rest of ours), with a door cycle at each,
+     * and the travel to the call. The call is served on the way if a leg passes its
+     * floor in the requested direction.
+     * @param targetFloor The requested floor.
+     * @param requestedDirection The requested direction.
+     * @param floorsPerSecond The velocity of the elevators.
+     * @param now The current time in nanoseconds.
+     * @return The estimated time of arrival in seconds.
      */
-    synchronized void stop() {
-        System.out.println(this);
-        printMyQueues();
-        System.out.println();
-        controller.sendCommand("m " + id + " 0");
+    synchronized double estimateArrival(int targetFloor, int requestedDirection, double floorsPerSecond, long now) {
+        // An elevator may still be flagged idle in the door cycle where it has got a request
+        boolean noRequests = idle && upQueue.isEmpty() && downQueue.isEmpty();
+        return estimate(upQueue, downQueue, noRequests, targetFloor, requestedDirection, floorsPerSecond, now);
+    }
+
+    /**
+     * Estimates the time until the elevator arrives at a hall call as estimateArrival
+     * does, but with the cab calls only, as if the hall calls of the elevator were
+     * reassigned too.
+     * @param targetFloor The requested floor.
+     * @param requestedDirection The requested direction.
+     * @param floorsPerSecond The velocity of the elevators.
+     * @param now The current time in nanoseconds.
+     * @return The estimated time of arrival in seconds.
+     */
+    synchronized double estimateArrivalWithoutCalls(int targetFloor, int requestedDirection, double floorsPerSecond, long now) {
+        boolean noStops = upStops.isEmpty() && downStops.isEmpty();
+        return estimate(upStops, downStops, noStops, targetFloor, requestedDirection, floorsPerSecond, now);
     }
 
     /**
-     * Toggles the doors on the elevator with a thread delay as well.
+     * Estimates the time of arrival at a hall call with the given queues.
      */
-    private void toggleDoors() {
-        controller.sendCommand("d " + id + " 1");
+    private double estimate(FloorRequests upQueue, FloorRequests downQueue, boolean idle,
+                            int targetFloor, int requestedDirection, double floorsPerSecond, long now) {
+        double time = 0;
+        long closedAt = doorsClosedAt;
+        if (closedAt != 0 && closedAt - now > 0)
+            time += (closedAt - now) / 1e9;
+        if (reachedFloor(targetFloor))
+            return time;
+        double target = targetFloor / (double) LEVEL, pos = floor / (double) LEVEL;
+        if (idle)
+            return time + travelTime(Math.abs(target - pos), floorsPerSecond);
+
+        int d = direction;
+        FloorRequests same = (d == Elevators.UP) ? upQueue : downQueue;
+        FloorRequests other = (d == Elevators.UP) ? downQueue : upQueue;
+        // The first floor ahead of us
+        int ahead = (d == Elevators.UP) ? floor / LEVEL + 1 : (floor + LEVEL - 1) / LEVEL - 1;
+        for (int pass = 0; pass < 3; pass++) {
+            FloorRequests queue = (pass == 1) ? other : same;
+            int dir = (pass == 1) ? -d : d;
+            int from = (pass == 0) ? ahead : (dir == Elevators.UP ? 0 : Integer.MAX_VALUE);
+            for (int f = next(queue, dir, from); f != -1; f = next(queue, dir, f + dir)) {
+                if (pass == 2 && (f - ahead) * dir >= 0)
+                    break;
+                // Served on the way to this stop?
+                if ((f - pos) * requestedDirection > 0 && (target - pos) * (f - target) >= 0)
+                    return time + travelTime(Math.abs(target - pos), floorsPerSecond);
+                time += travelTime(Math.abs(f - pos), floorsPerSecond) + DOOR_SECONDS;
+                pos = f;
+            }
+        }
+        return time + travelTime(Math.abs(target - pos), floorsPerSecond);
+    }
+
+    /**
+     * Computes the costs of the current state into the spare table and publishes it:
+     * the travel and door cycles to each floor and direction are those of estimate,
+     * found in one sweep along the same legs, where each leg sets the floors it passes
+     * in its direction that no earlier leg has set, and the stops are counted as
+     * stopsBefore does, with the requests below and above each floor counted on the
+     * way up the floors. Called with the lock held.
+     */
+    private void publishCosts() {
+        Costs next = spareCosts;
+        long stamp = next.lock.writeLock();
         try {
-            Thread.sleep(2000);
-        } catch (InterruptedException e){
-            e.printStackTrace();
+            float[] travel = next.travel;
+            int[] anchor = next.anchor, doorCycles = next.doorCycles, stops = next.stops;
+            int floors = travel.length / 2, at = floor;
+            Arrays.fill(travel, -1);
+            double pos = at / (double) LEVEL, distance = 0;
+            // The floor the first leg ends at, -1 until it is known
+            int first = -1;
+            int cycles = 0;
+            boolean noRequests = idle && upQueue.isEmpty() && downQueue.isEmpty();
+            if (!noRequests) {
+                int d = direction;
+                FloorRequests same = (d == Elevators.UP) ? upQueue : downQueue;
+                FloorRequests other = (d == Elevators.UP) ? downQueue : upQueue;
+                int ahead = (d == Elevators.UP) ? at / LEVEL + 1 : (at + LEVEL - 1) / LEVEL - 1;
+                for (int pass = 0; pass < 3; pass++) {
+                    FloorRequests queue = (pass == 1) ? other : same;
+                    int dir = (pass == 1) ? -d : d;
+                    int from = (pass == 0) ? ahead : (dir == Elevators.UP ? 0 : Integer.MAX_VALUE);
+                    for (int f = next(queue, dir, from); f != -1; f = next(queue, dir, f + dir)) {
+                        if (pass == 2 && (f - ahead) * dir >= 0)
+                            break;
+                        // The floors served on the way to this stop
+                        if (f != pos) {
+                            int legIndex = (f > pos) ? 0 : 1;
+                            int low = (int) Math.ceil(Math.min(pos, f)), high = (int) Math.floor(Math.max(pos, f));
+                            for (int t = low; t <= high; t++) {
+                                int i = 2 * t + legIndex;
+                                if (travel[i] < 0)
+                                    setCost(travel, anchor, doorCycles, i, t, first, distance, pos, cycles);
+                            }
+                        }
+                        if (first == -1)
+                            first = f;
+                        else
+                            distance += travelTime(Math.abs(f - pos), 1);
+                        cycles++;
+                        pos = f;
+                    }
+                }
+            }
+            int upSize = upQueue.size(), downSize = downQueue.size();
+            boolean moving = !idle, up = direction == Elevators.UP;
+            for (int i = 0; i < 2 * floors; i++) {
+                if (travel[i] < 0)
+                    setCost(travel, anchor, doorCycles, i, i / 2, first, distance, pos, cycles);
+            }
+            if (!moving)
+                Arrays.fill(stops, 1);
+            // The up requests at or below the floor, and the down requests below it
+            int upAtOrBelow = 0, downBelow = 0;
+            for (int t = 0; t < floors && moving; t++) {
+                boolean upHere = upQueue.contains(t), downHere = downQueue.contains(t);
+                if (upHere)
+                    upAtOrBelow++;
+                if (upHere || downHere) {
+                    stops[2 * t] = stops[2 * t + 1] = 2;
+                } else if (up) {
+                    stops[2 * t] = 3 + ((t * LEVEL - at > 0) ? upAtOrBelow : upSize + downSize);
+                    stops[2 * t + 1] = 3 + upSize;
+                } else {
+                    stops[2 * t] = 3 + downSize;
+                    stops[2 * t + 1] = 3 + ((at - t * LEVEL > 0) ? downSize - downBelow : downSize + upSize);
+                }
+                if (downHere)
+                    downBelow++;
+            }
+            next.level = at;
+            next.noRequests = noRequests;
+        } finally {
+            next.lock.unlockWrite(stamp);
         }
-        controller.sendCommand("d " + id + " -1");
-        try {   // For good looks
-            Thread.sleep(500);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        spareCosts = costs;
+        costs = next;
+    }
+
+    /**
+     * Sets the entry of a floor in the costs being computed, reached from a stop at pos
+     * after the given distance, or on the first leg if no stop is known yet.
+     */
+    private void setCost(float[] travel, int[] anchor, int[] doorCycles, int i, int t,
+                         int first, double distance, double pos, int cycles) {
+        if (first == -1) {
+            travel[i] = 0;
+            anchor[i] = t;
+        } else {
+            travel[i] = (float) (distance + travelTime(Math.abs(t - pos), 1));
+            anchor[i] = first;
         }
+        doorCycles[i] = cycles;
     }
 
     /**
-     * Get the ID of the elevator.
+     * Tells whether two positions are between the same floors, or at the same floor,
+     * so the costs of one hold for the other once the first leg is counted from it.
+     */
+    private static boolean sameFloors(int a, int b) {
+        return a / LEVEL == b / LEVEL && (a + LEVEL - 1) / LEVEL == (b + LEVEL - 1) / LEVEL;
+    }
+
+    /**
+     * Gives the time left of the current door cycle, without taking the lock.
+     * @param now The current time in nanoseconds.
+     * @return The time in seconds, 0 if the doors are idle.
+     */
+    double doorTimeLeft(long now) {
+        long closedAt = doorsClosedAt;
+        return (closedAt != 0 && closedAt - now > 0) ? (closedAt - now) / 1e9 : 0;
+    }
+
+    /**
+     * Estimates the time until the elevator arrives at a hall call as estimateArrival
+     * does, from the costs last published and without taking the lock, unless they do
+     * not cover the floor or the elevator has passed a floor since.
+     * @param targetFloor The requested floor.
+     * @param requestedDirection The requested direction.
+     * @param floorsPerSecond The velocity of the elevators.
+     * @param now The current time in nanoseconds.
+     * @return The estimated time of arrival in seconds.
+     */
+    double arrivalFromCosts(int targetFloor, int requestedDirection, double floorsPerSecond, long now) {
+        int at = floor;
+        double time = doorTimeLeft(now);
+        if (reached(at, targetFloor))
+            return time;
+        int i = callIndex(targetFloor / LEVEL, requestedDirection);
+        while (true) {
+            Costs c = costs;
+            if (!c.covers(targetFloor))
+                return estimateArrival(targetFloor, requestedDirection, floorsPerSecond, now);
+            long stamp = c.lock.tryOptimisticRead();
+            int level = c.level, cycles = c.doorCycles[i], anchor = c.anchor[i];
+            float travel = c.travel[i];
+            // Rewritten meanwhile: the published table is another one by now
+            if (!c.lock.validate(stamp))
+                continue;
+            if (!sameFloors(level, at))
+                return estimateArrival(targetFloor, requestedDirection, floorsPerSecond, now);
+            double firstLeg = travelTime(Math.abs(anchor - at / (double) LEVEL), 1);
+            return time + cycles * DOOR_SECONDS + (travel + firstLeg) / floorsPerSecond;
+        }
+    }
+
+    /**
+     * Counts the stops before a hall call as calcStopsBeforeService does, from the
+     * costs last published and without taking the lock, unless they do not cover the
+     * floor or the elevator has passed a floor since.
+     * @param targetFloor The requested floor.
+     * @param requestedDirection The requested direction.
+     * @return The cost/rank.
+     */
+    int stopsFromCosts(int targetFloor, int requestedDirection) {
+        int at = floor;
+        if (reached(at, targetFloor))
+            return 0;
+        int i = callIndex(targetFloor / LEVEL, requestedDirection);
+        while (true) {
+            Costs c = costs;
+            if (!c.covers(targetFloor))
+                return calcStopsBeforeService(targetFloor, requestedDirection);
+            long stamp = c.lock.tryOptimisticRead();
+            int level = c.level, stops = c.stops[i];
+            // Rewritten meanwhile: the published table is another one by now
+            if (!c.lock.validate(stamp))
+                continue;
+            if (!sameFloors(level, at))
+                return calcStopsBeforeService(targetFloor, requestedDirection);
+            return stops;
+        }
+    }
+
+    /**
+     * Tells whether the elevator is idle without requests and with the doors closed,
+     * as idleFor, from the costs last published and without taking the lock.
+     * @return True if the elevator is idle.
+     */
+    boolean isFree() {
+        while (true) {
+            Costs c = costs;
+            long stamp = c.lock.tryOptimisticRead();
+            boolean noRequests = c.noRequests;
+            if (c.lock.validate(stamp))
+                return noRequests && doorsClosedAt == 0;
+        }
+    }
+
+    /**
+     * Copies the state of the elevator to a model for the look-ahead of the rollout
+     * policy. The stop the doors are open at is taken as served.
+     * @param now The current time in nanoseconds, time 0 of the model.
+     * @return The model.
+     */
+    synchronized CarModel model(long now) {
+        double[] since = new double[callSince.length];
+        for (int i = 0; i < since.length; i++)
+            if (callSince[i] != 0)
+                since[i] = (callSince[i] - now) / 1e9;
+        CarModel model = new CarModel(this, floor / (double) LEVEL, direction, upQueue, downQueue, upCalls, downCalls,
+                since, doorTimeLeft(now));
+        if (doorsClosedAt != 0)
+            model.doorsOpenAt((floor + LEVEL / 2) / LEVEL);
+        return model;
+    }
+
+    /**
+     * Gives the next request of a queue from a floor in a direction, -1 if none.
+     */
+    private static int next(FloorRequests queue, int direction, int from) {
+        return (direction == Elevators.UP) ? queue.nextAtOrAbove(from) : queue.nextAtOrBelow(from);
+    }
+
+    /**
+     * Gives the time to travel a distance from standstill to standstill, with the
+     * motion limits of the cabins if any.
+     * @param floors The distance in floors.
+     * @param floorsPerSecond The top velocity.
+     * @return The time in seconds.
+     */
+    double travelTime(double floors, double floorsPerSecond) {
+        if (floors <= 0)
+            return 0;
+        if (profile == null)
+            return floors / floorsPerSecond;
+        // A time step moves the cabin by one movement step at the top velocity
+        return profile.travelTime(floors) * Elevators.step / floorsPerSecond;
+    }
+
+    /**
+     * Stops the elevator.
+     */
+    synchronized void stop() {
+        if (EventLog.isDebug())
+            EventLog.debug("%s", describe());
+        controller.sendMotor(id, 0);
+    }
+
+    /**
+     * Advances the door cycle if its timer has expired: opens the doors for 2 s, or 1 s
+     * if no one has called at this floor, then closes them and gives them 0.5 s to
+     * close. A request for this floor keeps the doors open for another 2 s, or opens
+     * them again while they close; a cab call to another floor, i.e. the passengers
+     * are in, closes them 0.5 s later unless someone else has called here meanwhile.
+     * The door state is changed under the lock, as park and idleFor read it there.
+     * @param now The current time in nanoseconds.
+     * @return True while the door cycle is in progress.
+     */
+    private synchronized boolean toggleDoors(long now) {
+        boolean here = requestHere, away = cabCallAway;
+        requestHere = false;
+        cabCallAway = false;
+        switch (doors) {
+            case DOORS_IDLE:
+                controller.sendDoor(id, 1);
+                doors = DOORS_OPEN;
+                if (served(target)) {
+                    setDoorDeadline(now + OPEN_NANOS);
+                } else {
+                    setDoorDeadline(now + ALIGHT_NANOS);
+                    shortened++;
+                }
+                return true;
+            case DOORS_OPEN:
+                if (here) {
+                    served(target);
+                    if (doorDeadline - (now + OPEN_NANOS) < 0)
+                        setDoorDeadline(now + OPEN_NANOS);
+                } else if (away && (now + SHORT_OPEN_NANOS) - doorDeadline < 0) {
+                    setDoorDeadline(now + SHORT_OPEN_NANOS);
+                    shortened++;
+                }
+                if (now - doorDeadline < 0)
+                    return true;
+                controller.sendDoor(id, -1);
+                doors = DOORS_CLOSING;
+                doorDeadline = now + CLOSING_NANOS;  // For good looks
+                return true;
+            default:
+                if (here) {
+                    controller.sendDoor(id, 1);
+                    served(target);
+                    doors = DOORS_OPEN;
+                    setDoorDeadline(now + OPEN_NANOS);
+                    reopened++;
+                    return true;
+                }
+                if (now - doorDeadline < 0)
+                    return true;
+                doors = DOORS_IDLE;
+                doorsClosedAt = 0;
+                return false;
+        }
+    }
+
+    /**
+     * Sets when the open doors start to close, and when the door cycle ends. Called
+     * with the lock held.
+     */
+    private void setDoorDeadline(long deadline) {
+        doorDeadline = deadline;
+        doorsClosedAt = deadline + CLOSING_NANOS;
+    }
+
+    /**
+     * Gives the number of times the doors have been opened again as they closed.
+     * @return The number of reopenings.
+     */
+    long getReopenedCount() {
+        return reopened;
+    }
+
+    /**
+     * Gives the number of times the doors have closed early as the passengers had
+     * pressed their floors.
+     * @return The number of shortened door cycles.
+     */
+    long getShortenedCount() {
+        return shortened;
+    }
+
+    /**
+     * Sends the idle elevator to a parking floor, where it waits with the doors closed.
+     * Any request cancels the parking.
+     * @param level The parking floor, floor 4 as 400.
+     * @return True if the elevator goes there, false if it is busy or there already.
+     */
+    synchronized boolean park(int level) {
+        if (!idle || !upQueue.isEmpty() || !downQueue.isEmpty() || doors != DOORS_IDLE)
+            return false;
+        if (parkLevel == level || (parkLevel == -1 && reachedFloor(level)))
+            return false;
+        parkLevel = level;
+        wake();
+        return true;
+    }
+
+    /**
+     * Gives how long the elevator has been idle, for the parking.
+     * @param now The current time in nanoseconds.
+     * @return The time in nanoseconds, -1 if the elevator is busy.
+     */
+    synchronized long idleFor(long now) {
+        if (!idle || !upQueue.isEmpty() || !downQueue.isEmpty() || doors != DOORS_IDLE)
+            return -1;
+        return now - idleSince;
+    }
+
+    /**
+     * Gives where an idle elevator will be: its parking floor if it is on its way
+     * there, its position otherwise.
+     * @return The level, floor 4 as 400.
+     */
+    synchronized int getParkedLevel() {
+        return parkLevel != -1 ? parkLevel : floor;
+    }
+
+    /**
+     * Get the position of the elevator, without taking the lock.
+     * @return The position, level 4 as 400.
+     */
+    int getLevel() {
+        return floor;
+    }
+
+    /**
+     * Tells whether the elevator is on its way down from above a floor, so it passes it.
+     * Reads the volatile state without taking the lock, for the dispatch.
+     * @param level The floor, floor 4 as 400.
+     * @return True if it is moving down above the floor.
+     */
+    boolean headsDownPast(int level) {
+        return !idle && direction == Elevators.DOWN && floor > level;
+    }
+
+    /**
+     * Get the ID of the elevator, without taking the lock as it never changes.
      * @return The ID.
      */
-    synchronized int getId() {
+    int getId() {
         return id;
     }
 
@@ -238,19 +956,67 @@ public class ElevatorState implements Runnable {
     }
 
     /**
-     * Prints the queues. For debug.
+     * Describes the state and the queues. For debug.
+     * @return The description.
      */
-    synchronized void printMyQueues() {
-        System.out.println("---> ELEVATOR #"+id);
-        System.out.printf("Upqueue:\n[");
-        for (Integer i : upQueue) {
-            System.out.printf("%d, ", i);
+    synchronized String describe() {
+        StringBuilder text = new StringBuilder(toString());
+        text.append(", up [");
+        for (int f = upQueue.lowest(); f != -1; f = upQueue.nextAtOrAbove(f + 1)) {
+            text.append(f * LEVEL).append(", ");
         }
-        System.out.printf("]\nDownqueue:\n[");
-        for (Integer i : downQueue) {
-            System.out.printf("%d, ", i);
+        text.append("], down [");
+        for (int f = downQueue.highest(); f != -1; f = downQueue.nextAtOrBelow(f - 1)) {
+            text.append(f * LEVEL).append(", ");
         }
-        System.out.printf("]\n");
+        return text.append("]").toString();
+    }
+
+    /**
+     * Writes the floor, direction, idle flag and queues to a snapshot.
+     * @param out The output of the snapshot.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    synchronized void writeState(DataOutput out) throws IOException {
+        out.writeInt(floor);
+        out.writeInt(direction);
+        out.writeBoolean(idle);
+        writeQueue(out, upQueue);
+        writeQueue(out, downQueue);
+    }
+
+    /**
+     * Reads the floor, direction, idle flag and queues from a snapshot.
+     * @param in The input of the snapshot.
+     * @throws IOException If the snapshot cannot be read.
+     */
+    synchronized void readState(DataInput in) throws IOException {
+        floor = in.readInt();
+        direction = in.readInt();
+        idle = in.readBoolean();
+        readQueue(in, upQueue);
+        readQueue(in, downQueue);
+        // The snapshot does not tell hall calls from cab calls, the requests stay with us
+        upStops.clear();
+        downStops.clear();
+        for (int f = upQueue.lowest(); f != -1; f = upQueue.nextAtOrAbove(f + 1))
+            upStops.add(f);
+        for (int f = downQueue.lowest(); f != -1; f = downQueue.nextAtOrAbove(f + 1))
+            downStops.add(f);
+        publishCosts();
+    }
+
+    private static void writeQueue(DataOutput out, FloorRequests queue) throws IOException {
+        out.writeInt(queue.size());
+        for (int f = queue.lowest(); f != -1; f = queue.nextAtOrAbove(f + 1))
+            out.writeInt(f * LEVEL);
+    }
+
+    private static void readQueue(DataInput in, FloorRequests queue) throws IOException {
+        queue.clear();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++)
+            queue.add(in.readInt() / LEVEL);
     }
 
     /**
@@ -262,10 +1028,19 @@ public class ElevatorState implements Runnable {
      */
     private boolean reachedFloor(int target) {
         if (target == -1) return false;
+        return reached(floor, target);
+    }
+
+    /**
+     * Tests whether a position is at a floor, within the error margin of reachedFloor.
+     * Used by the reads without the lock, which pass the position they have read.
+     * @param at The position, floor 4 as 400.
+     * @param target The floor to test.
+     * @return True if the position is at the floor.
+     */
+    private static boolean reached(int at, int target) {
         // Test value, may be subject to change
-        if (Math.abs(floor - target) <= 6)
-            return true;
-        return false;
+        return Math.abs(at - target) <= REACHED_MARGIN;
     }
 
     /**
@@ -273,103 +1048,157 @@ public class ElevatorState implements Runnable {
      * @param floor The new floor state.
      */
     public void setFloor(int floor) {
-        this.floor = floor;
+        synchronized (this) {
+            if (this.floor == floor)
+                return;
+            boolean passed = !sameFloors(this.floor, floor);
+            this.floor = floor;
+            // Between two floors the costs only need the new position, which they are read with
+            if (passed)
+                publishCosts();
+        }
+        wake();
     }
 
     /**
      * The main loop of the thread which is used to make decisions on what to do next.
+     * The thread sleeps until a position update or a request arrives, or the door timer expires.
      */
     @Override
     public void run() {
-        // These initialize to different numbers to make if statement work and not spam the elevator with the same cmd
-        int target = -1;
-        int prevTarget = -2;
         while (true) {
-            try {
-                Thread.sleep(10);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+            synchronized (this) {
+                while (!changed) {
+                    long wait = (doors == DOORS_IDLE) ? 0 : doorDeadline - System.nanoTime();
+                    if (doors != DOORS_IDLE && wait <= 0)
+                        break;
+                    try {
+                        if (wait == 0)
+                            wait();
+                        else
+                            wait(wait / 1000000, (int) (wait % 1000000));
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+                changed = false;
             }
+            react(System.nanoTime());
+        }
+    }
 
-            updateDisplay();
+    /**
+     * Decides what to do next after an input has arrived or the door timer has expired.
+     * @param now The current time in nanoseconds.
+     */
+    private void react(long now) {
+        updateDisplay();
 
-            // Check to see if it reached it's floor
-            if (reachedFloor(target)) {
+        // Parked: stop there with the doors closed
+        if (doors == DOORS_IDLE && parking && reachedFloor(target)) {
+            stop();
+            synchronized (this) {
+                if (parkLevel == target)
+                    parkLevel = -1;
+            }
+            target = -1;
+        }
+
+        // Check to see if it reached it's floor, and serve it
+        if (doors != DOORS_IDLE || reachedFloor(target)) {
+            if (doors == DOORS_IDLE)
                 stop();
-                toggleDoors();
-                synchronized (this) {
-                    upQueue.removeFirstOccurrence(target);
-                    downQueue.removeFirstOccurrence(target);
-                }
+            if (toggleDoors(now))
+                return;
+            synchronized (this) {
+                upQueue.remove(target / LEVEL);
+                downQueue.remove(target / LEVEL);
+                upStops.remove(target / LEVEL);
+                downStops.remove(target / LEVEL);
+                publishCosts();
             }
+        }
 
-            // If we have no target, we want a new one.
-            target = getNextDestination();
-            if (target != prevTarget && target != -1) {
-                System.out.printf("Elevator #%d got destination %d.\n", id, target);
-                synchronized (this) {
-                    idle = false;
+        // If we have no target, we want a new one.
+        // The targets initialize to different numbers to make if statement work and not spam the elevator with the same cmd
+        target = getNextDestination();
+        if (doors == DOORS_IDLE && reachedFloor(target)) {
+            // A request at the floor we stand at, e.g. the floor we have just served
+            react(now);
+            return;
+        }
+        if (target != prevTarget && target != -1) {
+            EventLog.debug("Elevator #%d got %s %d.", id, parking ? "parking floor" : "destination", target);
+            synchronized (this) {
+                // A parking elevator is idle, it takes any request on its way
+                if (idle != parking)
+                    idleSince = now;
+                idle = parking;
+            }
+            goTowardsTarget(target);
+            prevTarget = target;
+        } else if (target == -1) {
+            synchronized (this) {
+                // Our requests have been moved to another elevator on our way
+                if (!idle && prevTarget != -2 && !reachedFloor(prevTarget)) {
+                    stop();
+                    prevTarget = -2;
                 }
-                goTowardsTarget(target);
-                prevTarget = target;
-            } else if (target == -1) {
-                synchronized (this) {
+                if (!idle) {
+                    idleSince = now;
                     idle = true;
+                    publishCosts();
                 }
             }
         }
+        synchronized (this) {
+            // the requests so far have been taken into account
+            pendingSince = 0;
+        }
     }
 
     /**
-     * Updates display to show the current level.
+     * Updates display to show the current level, if it has changed.
      */
     synchronized private void updateDisplay() {
         int floor = (int) (this.floor/100.0 + 0.5);
-        controller.sendCommand("s " + id + " " + floor);
+        if (floor == shownFloor) {
+            displaySuppressed++;
+            return;
+        }
+        shownFloor = floor;
+        displayed++;
+        controller.sendScale(id, floor);
+    }
+
+    /**
+     * Gives the number of floor indicator updates sent.
+     * @return The number of "s" commands.
+     */
+    long getDisplayedCount() {
+        return displayed;
     }
 
     /**
-     * This method returns the next destination for the elevator. It takes its state and queues
-     * into consideration to make effective decisions leading to a effective strategy.
+     * Gives the number of floor indicator updates left out, as the floor had not changed.
+     * @return The number of "s" commands not sent.
+     */
+    long getDisplaySuppressedCount() {
+        return displaySuppressed;
+    }
+
+    /**
+     * This method returns the next destination for the elevator, as decided by the
+     * dispatch policy of the controller from the state and queues of the elevator.
      * @return The next destination floor.
      */
     synchronized private int getNextDestination() {
-        /**
-         * Algorithm explanation:
-         * - 1st consideration:
-         * Is there a request for the same direction that we are traveling in,
-         * which is ahead of us as well?
-         * - 2nd consideration:
-         * Is there a request in the other direction at all?
-         * - 3rd consideration:
-         * Is there a request in the "original (1st)" direction at all, (but that wasn't ahead of us)?
-         */
-        if (direction == Elevators.UP) {
-            for (Integer integer : upQueue) {
-                if (integer > floor) {
-                    return integer;
-                }
-            }
-            if (downQueue.peek() != null) {
-                return downQueue.peek();
-            } else if(upQueue.peek() != null) {
-                return upQueue.peek();
-            }
-        } else {
-            // We're going down
-            for (Integer integer : downQueue) {
-                if (integer < floor) {
-                    return integer;
-                }
-            }
-            if (upQueue.peek() != null) {
-                return upQueue.peek();
-            } else if(downQueue.peek() != null) {
-                return downQueue.peek();
-            }
-        }
-        // We have no target, pls give
-        return -1;
+        int next = controller.getPolicy().nextStop(floor, direction, upQueue, downQueue);
+        // We have no target (-1), pls give, unless we are sent to park
+        parking = (next == -1 && parkLevel != -1);
+        if (parking)
+            return parkLevel;
+        return next == -1 ? -1 : next * LEVEL;
     }
 
     /**
@@ -378,13 +1207,18 @@ public class ElevatorState implements Runnable {
      * @param target The target floor.
      */
     synchronized private void goTowardsTarget(int target) {
+        if (pendingSince != 0) {
+            controller.getLatency().record(System.nanoTime() - pendingSince);
+            pendingSince = 0;
+        }
         if (floor - target > 0) {
             direction = Elevators.DOWN;
-            controller.sendCommand("m " + id + " -1");
+            controller.sendMotor(id, -1);
         } else {
             direction = Elevators.UP;
-            controller.sendCommand("m " + id + " 1");
+            controller.sendMotor(id, 1);
         }
+        publishCosts();
     }
 
 }
\ No newline at end of file
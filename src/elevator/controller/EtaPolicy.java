@@ -0,0 +1,66 @@
+package elevator.controller;
+
+import elevator.Elevators;
+
+/**
+ * Title:        Elevator Controller ETA Policy
+ * Description:  The default policy: a hall call is taken by the elevator with the
+ *               earliest estimated time of arrival, see ElevatorState.estimateArrival,
+ *               and the elevators stop in the collective order. The estimates are read
+ *               from the costs each elevator keeps up to date, one entry per elevator
+ *               and without its lock. The only idle elevator at a floor where calls
+ *               are predicted pays for leaving it: the calls expected there during its
+ *               trip wait about half the trip longer.
+ * Company:      KTH
+ * Course:       ID1217 Concurrent Programming.
+ *
+ * @authors Emil Lindholm Brandt & Sabina Hauzenberger
+ * @version 1.0
+ */
+
+class EtaPolicy extends CollectivePolicy {
+
+    private static final int LEVEL = ElevatorState.LEVEL;
+
+    public String getName() {
+        return "eta";
+    }
+
+    public ElevatorState assign(ElevatorState[] elevators, int level, int direction, double floorsPerSecond, long now,
+                                DemandPredictor demand) {
+        // The idle elevators at each floor
+        boolean[] free = new boolean[elevators.length];
+        int[] at = new int[elevators.length];
+        int[] idleAt = new int[Elevators.topFloor + 1];
+        for (int k = 0; k < elevators.length; k++) {
+            free[k] = elevators[k].isFree();
+            at[k] = elevators[k].getLevel();
+            if (free[k])
+                idleAt[floorOf(at[k])]++;
+        }
+        long millis = System.currentTimeMillis();
+        double lowestCost = Double.MAX_VALUE;
+        ElevatorState best = null;
+        for (int k = 0; k < elevators.length; k++) {
+            ElevatorState e = elevators[k];
+            int floor = floorOf(at[k]);
+            double cost = e.arrivalFromCosts(level, direction, floorsPerSecond, now);
+            if (demand != null && cost > 0 && free[k] && idleAt[floor] == 1)
+                cost += demand.rate(floor, millis) * cost * cost / 2;
+            if (EventLog.isDebug())
+                EventLog.debug("Elevator %d has cost %.2f s", e.getId(), cost);
+            if (cost < lowestCost || best == null) {
+                lowestCost = cost;
+                best = e;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Gives the floor nearest to a position.
+     */
+    private static int floorOf(int level) {
+        return Math.max(0, Math.min(Elevators.topFloor, (level + LEVEL / 2) / LEVEL));
+    }
+}
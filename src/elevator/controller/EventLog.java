@@ -0,0 +1,330 @@
+package elevator.controller;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Formatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Title:        Elevator Controller Event Log
+ * Description:  The log of the controller, written off the dispatch path. An event is
+ *               its level, a format string and a few numbers and strings, copied into
+ *               the next slot of a ring buffer allocated at startup; the format is only
+ *               applied by a writer thread of its own, which drains the ring to a file,
+ *               or to the standard output, and flushes when the ring is empty. The car
+ *               threads claim slots with compare-and-set and never wait for the writer:
+ *               an event that finds the ring full is dropped and counted. The DEBUG
+ *               events, e.g. the queues of every elevator on each button, are only kept
+ *               if the application has started with the "-debug" option of Elevators,
+ *               and callers test isDebug before building their text.
+ * Company:      KTH
+ * Course:       ID1217 Concurrent Programming.
+ *
+ * @authors Emil Lindholm Brandt & Sabina Hauzenberger
+ * @version 1.0
+ */
+
+class EventLog {
+
+    /* The levels of events */
+    static final int DEBUG = 0;
+    static final int INFO = 1;
+    private static final String[] LEVELS = {"DEBUG", "INFO "};
+
+    /* The number of slots of the ring, a power of two */
+    private static final int CAPACITY = 8192;
+    /* The numbers and strings an event can carry */
+    private static final int LONGS = 3;
+    private static final int DOUBLES = 2;
+    private static final int TEXTS = 2;
+    /* How long the writer sleeps when the ring is empty, in ns */
+    private static final long IDLE_WAIT = 5000000L;
+
+    /* The log of the controller, on the standard output until it is opened */
+    private static volatile EventLog log = new EventLog(new PrintWriter(System.out), false, INFO,
+            new AtomicLong());
+
+    /* The events, in slot order; the fields of a slot are written before it is published */
+    private final long[] times = new long[CAPACITY];
+    private final int[] levels = new int[CAPACITY];
+    private final String[] formats = new String[CAPACITY];
+    private final long[] longs = new long[CAPACITY * LONGS];
+    private final double[] doubles = new double[CAPACITY * DOUBLES];
+    private final String[] texts = new String[CAPACITY * TEXTS];
+    /* The sequence number of the event in each slot, once it has been written */
+    private final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+    /* The next sequence number to claim */
+    private final AtomicLong claimed = new AtomicLong();
+    /* The next sequence number to write out, only advanced by the writer */
+    private volatile long consumed;
+    /* The events dropped, carried over from the log this one has replaced */
+    private final AtomicLong dropped;
+    private final long start = System.nanoTime();
+    private final int level;
+    private final PrintWriter out;
+    /* True if the output is a file of the log, closed with it */
+    private final boolean ownOutput;
+    private final Thread writer;
+    private volatile boolean closed;
+    /* The line being formatted by the writer, the arguments of its format and its chars */
+    private final StringBuilder line = new StringBuilder(128);
+    private final Formatter formatter = new Formatter(line);
+    private final Object[] args = new Object[LONGS + DOUBLES + TEXTS];
+    private char[] chars = new char[128];
+
+    /**
+     * Creates a log and starts its writer.
+     * @param dropped The count of dropped events, shared with the log replaced.
+     */
+    private EventLog(PrintWriter out, boolean ownOutput, int level, AtomicLong dropped) {
+        this.out = out;
+        this.dropped = dropped;
+        this.ownOutput = ownOutput;
+        this.level = level;
+        for (int i = 0; i < CAPACITY; i++)
+            published.set(i, -1);
+        writer = new Thread(new Runnable() {
+            public void run() {
+                drain();
+            }
+        }, "EventLog");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Replaces the log of the controller, e.g. by the one of the "-log" option. The
+     * events of the previous log are written out first; those logged to it after it
+     * has been replaced are dropped, and counted by the new log.
+     * @param fileName The file to write to, or null for the standard output.
+     * @param debug True if the DEBUG events are kept.
+     * @throws IOException If the file cannot be opened.
+     */
+    static void open(String fileName, boolean debug) throws IOException {
+        PrintWriter out = (fileName == null) ? new PrintWriter(System.out)
+                : new PrintWriter(new OutputStreamWriter(new FileOutputStream(fileName)));
+        EventLog previous = log;
+        log = new EventLog(out, fileName != null, debug ? DEBUG : INFO, previous.dropped);
+        previous.stop();
+    }
+
+    /**
+     * Writes out the events logged so far and stops the writer, e.g. at exit.
+     */
+    static void close() {
+        log.stop();
+    }
+
+    /**
+     * Tells whether the DEBUG events are kept, so their text is worth building.
+     * @return True if they are kept.
+     */
+    static boolean isDebug() {
+        return log.level == DEBUG;
+    }
+
+    /**
+     * Gives the number of events dropped as the ring was full or the log closed,
+     * including those of the logs replaced.
+     * @return The number of events.
+     */
+    static long getDroppedCount() {
+        return log.dropped.get();
+    }
+
+    static void debug(String format) {
+        log.put(DEBUG, format, null, null, 0, 0, 0, 0, 0);
+    }
+
+    static void debug(String format, String text) {
+        log.put(DEBUG, format, text, null, 0, 0, 0, 0, 0);
+    }
+
+    static void debug(String format, long a, long b) {
+        log.put(DEBUG, format, null, null, a, b, 0, 0, 0);
+    }
+
+    static void debug(String format, long a, long b, long c) {
+        log.put(DEBUG, format, null, null, a, b, c, 0, 0);
+    }
+
+    static void debug(String format, long a, String text, long b) {
+        log.put(DEBUG, format, text, null, a, b, 0, 0, 0);
+    }
+
+    static void debug(String format, long a, double x) {
+        log.put(DEBUG, format, null, null, a, 0, 0, x, 0);
+    }
+
+    static void info(String format) {
+        log.put(INFO, format, null, null, 0, 0, 0, 0, 0);
+    }
+
+    static void info(String format, String text) {
+        log.put(INFO, format, text, null, 0, 0, 0, 0, 0);
+    }
+
+    static void info(String format, long a) {
+        log.put(INFO, format, null, null, a, 0, 0, 0, 0);
+    }
+
+    static void info(String format, long a, long b, long c) {
+        log.put(INFO, format, null, null, a, b, c, 0, 0);
+    }
+
+    static void info(String format, long a, long b, String text) {
+        log.put(INFO, format, text, null, a, b, 0, 0, 0);
+    }
+
+    static void info(String format, String text, String text2, long a, long b, double x, double y) {
+        log.put(INFO, format, text, text2, a, b, 0, x, y);
+    }
+
+    /**
+     * Copies an event into the next free slot. The numbers and strings are taken by the
+     * conversions of the format in order of their kind: %d the longs, %f the doubles,
+     * %s the strings.
+     */
+    private void put(int level, String format, String text, String text2, long a, long b, long c,
+                     double x, double y) {
+        if (level < this.level)
+            return;
+        if (closed) {
+            dropped.incrementAndGet();
+            return;
+        }
+        long seq;
+        do {
+            seq = claimed.get();
+            if (seq - consumed >= CAPACITY) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!claimed.compareAndSet(seq, seq + 1));
+        int slot = (int) seq & (CAPACITY - 1);
+        if (closed) {
+            // Closed as the slot was claimed: the writer may have stopped, or skips it
+            dropped.incrementAndGet();
+            formats[slot] = null;
+            published.set(slot, seq);
+            return;
+        }
+        times[slot] = System.nanoTime();
+        levels[slot] = level;
+        formats[slot] = format;
+        longs[slot * LONGS] = a;
+        longs[slot * LONGS + 1] = b;
+        longs[slot * LONGS + 2] = c;
+        doubles[slot * DOUBLES] = x;
+        doubles[slot * DOUBLES + 1] = y;
+        texts[slot * TEXTS] = text;
+        texts[slot * TEXTS + 1] = text2;
+        published.set(slot, seq);
+    }
+
+    /**
+     * Writes out the events in order until the log is closed.
+     */
+    private void drain() {
+        long next = consumed;
+        while (true) {
+            int slot = (int) next & (CAPACITY - 1);
+            if (published.get(slot) == next) {
+                if (formats[slot] != null)
+                    write(slot);
+                formats[slot] = null;
+                texts[slot * TEXTS] = null;
+                texts[slot * TEXTS + 1] = null;
+                consumed = ++next;
+            } else if (closed && next == claimed.get()) {
+                break;
+            } else {
+                out.flush();
+                if (!closed)
+                    LockSupport.parkNanos(this, IDLE_WAIT);
+                else
+                    Thread.yield();
+            }
+        }
+        long lost = dropped.get();
+        if (lost > 0)
+            out.printf("Event log: %d events dropped%n", lost);
+        out.flush();
+    }
+
+    /**
+     * Formats the event of a slot and writes it as one line, into the line and the
+     * arguments the writer reuses.
+     */
+    private void write(int slot) {
+        String format = formats[slot];
+        int n = 0, l = 0, d = 0, t = 0;
+        for (int i = format.indexOf('%'); i != -1; i = format.indexOf('%', i + 1)) {
+            int j = i + 1;
+            while (j < format.length() && "0123456789.-+, #".indexOf(format.charAt(j)) >= 0)
+                j++;
+            if (j == format.length())
+                break;
+            char conversion = format.charAt(j);
+            if (conversion == 'd' && l < LONGS)
+                args[n++] = longs[slot * LONGS + l++];
+            else if (conversion == 'f' && d < DOUBLES)
+                args[n++] = doubles[slot * DOUBLES + d++];
+            else if (conversion == 's' && t < TEXTS)
+                args[n++] = texts[slot * TEXTS + t++];
+            i = j;
+        }
+        line.setLength(0);
+        appendTime(times[slot] - start);
+        line.append(' ').append(LEVELS[levels[slot]]).append(' ');
+        formatter.format(format, args);
+        for (int i = 0; i < n; i++)
+            args[i] = null;
+        int length = line.length();
+        if (chars.length < length)
+            chars = new char[2 * length];
+        line.getChars(0, length, chars, 0);
+        out.write(chars, 0, length);
+        out.println();
+    }
+
+    /**
+     * Appends a time in seconds with three decimals, right-aligned in nine characters,
+     * as "%9.3f" would.
+     */
+    private void appendTime(long nanos) {
+        long millis = (nanos + 500000) / 1000000;
+        int at = line.length();
+        line.append(millis / 1000).append('.');
+        long fraction = millis % 1000;
+        if (fraction < 100)
+            line.append('0');
+        if (fraction < 10)
+            line.append('0');
+        line.append(fraction);
+        while (line.length() - at < 9)
+            line.insert(at, ' ');
+    }
+
+    /**
+     * Stops the writer once it has written out the events logged so far, and closes
+     * the file of the log.
+     */
+    private void stop() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (out.checkError())
+            System.err.println("The event log could not be written completely.");
+        if (ownOutput)
+            out.close();
+    }
+}
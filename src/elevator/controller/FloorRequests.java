@@ -0,0 +1,182 @@
+package elevator.controller;
+
+/**
+ * Title:        Elevator Controller Floor Requests
+ * Description:  The requested stops of one elevator in one direction, as a bitset
+ *               indexed by floor number. Adding, removing and looking up a floor
+ *               are O(1), searching the next stop and counting the stops between
+ *               two floors are O(floors / 64), and nothing is allocated after the
+ *               bitset has grown to the top floor.
+ * Company:      KTH
+ * Course:       ID1217 Concurrent Programming.
+ *
+ * @authors Emil Lindholm Brandt & Sabina Hauzenberger
+ * @version 1.0
+ */
+
+class FloorRequests {
+
+    private long[] words;
+
+    /**
+     * Creates an empty set of requests.
+     * @param floors The number of floors, the set grows if a higher floor is added.
+     */
+    FloorRequests(int floors) {
+        words = new long[Math.max(1, (floors + 63) >>> 6)];
+    }
+
+    /**
+     * Creates a copy of a set of requests, e.g. for a look-ahead simulation.
+     * @param other The requests to copy.
+     */
+    FloorRequests(FloorRequests other) {
+        words = other.words.clone();
+    }
+
+    /**
+     * Adds a request.
+     * @param floor The floor.
+     */
+    void add(int floor) {
+        int w = floor >>> 6;
+        if (w >= words.length) {
+            long[] grown = new long[Math.max(w + 1, 2 * words.length)];
+            System.arraycopy(words, 0, grown, 0, words.length);
+            words = grown;
+        }
+        words[w] |= 1L << floor;
+    }
+
+    /**
+     * Removes a request, if any.
+     * @param floor The floor.
+     */
+    void remove(int floor) {
+        int w = floor >>> 6;
+        if (floor >= 0 && w < words.length)
+            words[w] &= ~(1L << floor);
+    }
+
+    /**
+     * Tests for a request.
+     * @param floor The floor.
+     * @return True if the floor is requested.
+     */
+    boolean contains(int floor) {
+        int w = floor >>> 6;
+        return floor >= 0 && w < words.length && (words[w] & (1L << floor)) != 0;
+    }
+
+    /**
+     * Removes all requests.
+     */
+    void clear() {
+        for (int w = 0; w < words.length; w++)
+            words[w] = 0;
+    }
+
+    /**
+     * Tests whether there are no requests.
+     * @return True if the set is empty.
+     */
+    boolean isEmpty() {
+        for (int w = 0; w < words.length; w++)
+            if (words[w] != 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * Counts the requests.
+     * @return The number of requested floors.
+     */
+    int size() {
+        int count = 0;
+        for (int w = 0; w < words.length; w++)
+            count += Long.bitCount(words[w]);
+        return count;
+    }
+
+    /**
+     * Finds the lowest requested floor at or above the given one.
+     * @param floor The floor to search from.
+     * @return The floor, or -1 if there is none.
+     */
+    int nextAtOrAbove(int floor) {
+        if (floor < 0)
+            floor = 0;
+        int w = floor >>> 6;
+        if (w >= words.length)
+            return -1;
+        long word = words[w] & (-1L << floor);
+        while (true) {
+            if (word != 0)
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            if (++w == words.length)
+                return -1;
+            word = words[w];
+        }
+    }
+
+    /**
+     * Finds the highest requested floor at or below the given one.
+     * @param floor The floor to search from.
+     * @return The floor, or -1 if there is none.
+     */
+    int nextAtOrBelow(int floor) {
+        if (floor < 0)
+            return -1;
+        int w = floor >>> 6;
+        if (w >= words.length) {
+            w = words.length - 1;
+            floor = (w << 6) + 63;
+        }
+        long word = words[w] & (-1L >>> (63 - (floor & 63)));
+        while (true) {
+            if (word != 0)
+                return (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+            if (w-- == 0)
+                return -1;
+            word = words[w];
+        }
+    }
+
+    /**
+     * Gives the lowest requested floor.
+     * @return The floor, or -1 if there is none.
+     */
+    int lowest() {
+        return nextAtOrAbove(0);
+    }
+
+    /**
+     * Gives the highest requested floor.
+     * @return The floor, or -1 if there is none.
+     */
+    int highest() {
+        return nextAtOrBelow(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Counts the requests between two floors, both included.
+     * @param from The lower floor.
+     * @param to The upper floor.
+     * @return The number of requested floors in the range.
+     */
+    int countBetween(int from, int to) {
+        if (from < 0)
+            from = 0;
+        to = Math.min(to, (words.length << 6) - 1);
+        if (from > to)
+            return 0;
+        int first = from >>> 6, last = to >>> 6;
+        long lowMask = -1L << from, highMask = -1L >>> (63 - (to & 63));
+        if (first == last)
+            return Long.bitCount(words[first] & lowMask & highMask);
+        int count = Long.bitCount(words[first] & lowMask) + Long.bitCount(words[last] & highMask);
+        for (int w = first + 1; w < last; w++)
+            count += Long.bitCount(words[w]);
+        return count;
+    }
+}
@@ -0,0 +1,116 @@
+package elevator.controller;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Title:        Elevator Controller Latency
+ * Description:  Collects durations, e.g. the time from a call (a floor or a panel
+ *               button) to the motor command it results in or the time a hall call
+ *               waits for an elevator, and reports count, mean, maximum and the
+ *               95th and 99th percentiles. Recording takes no lock, as it is done by
+ *               the elevator threads holding their monitor and by the command pipeline.
+ * Company:      KTH
+ * Course:       ID1217 Concurrent Programming.
+ *
+ * @authors Emil Lindholm Brandt & Sabina Hauzenberger
+ * @version 1.0
+ */
+
+class Latency {
+
+    /* Eight buckets per power of two microseconds, so a percentile is within 12.5% */
+    private final AtomicLongArray buckets = new AtomicLongArray(8 * 62);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    private final String title;
+    private final String unit;
+    private final double nanosPerUnit;
+
+    /**
+     * Creates an empty collection of durations.
+     * @param title The title of the report.
+     * @param unit The unit of the report, "ms" or "s".
+     */
+    Latency(String title, String unit) {
+        this.title = title;
+        this.unit = unit;
+        this.nanosPerUnit = unit.equals("s") ? 1e9 : 1e6;
+    }
+
+    /**
+     * Records one latency. A negative one, from times read on different threads, is
+     * taken as 0.
+     * @param nanos The latency in nanoseconds.
+     */
+    void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        buckets.incrementAndGet(bucket(nanos / 1000));
+        total.addAndGet(nanos);
+        long m;
+        while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) ;
+        count.incrementAndGet();
+    }
+
+    /**
+     * Gives the bucket of a latency: the power of two and the next three bits.
+     */
+    private static int bucket(long micros) {
+        if (micros < 8)
+            return (int) micros;
+        int e = 63 - Long.numberOfLeadingZeros(micros);
+        return (e - 2) * 8 + (int) ((micros >>> (e - 3)) & 7);
+    }
+
+    /**
+     * Gives the upper bound of a bucket in microseconds.
+     */
+    private static long upperBound(int k) {
+        if (k < 8)
+            return k + 1;
+        return (long) (8 + k % 8 + 1) << (k / 8 - 1);
+    }
+
+    /**
+     * Returns the number of recorded latencies.
+     * @return The count.
+     */
+    long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Gives the upper bound of a percentile of the latencies in a copy of the buckets.
+     * @param counts The buckets.
+     * @param count The number of latencies in them.
+     * @param max The maximum latency.
+     * @param percent The percentile.
+     * @return The bound in nanoseconds.
+     */
+    private static long percentile(long[] counts, long count, long max, int percent) {
+        long rank = (count * percent + 99) / 100, seen = 0;
+        int k = 0;
+        while (k < counts.length - 1 && (seen += counts[k]) < rank) k++;
+        return Math.min(max, upperBound(k) * 1000);
+    }
+
+    /**
+     * Gives a one-line report of the recorded latencies. Latencies recorded while it
+     * is made may be left out of some of the figures.
+     * @return The report.
+     */
+    String report() {
+        long[] counts = new long[buckets.length()];
+        long count = 0;
+        for (int k = 0; k < counts.length; k++)
+            count += counts[k] = buckets.get(k);
+        if (count == 0)
+            return title + ": none";
+        long max = this.max.get();
+        return String.format("%s: %d, mean %.3f %s, 95%% below %.3f %s, 99%% below %.3f %s, max %.3f %s",
+                title, count, total.get() / nanosPerUnit / count, unit,
+                percentile(counts, count, max, 95) / nanosPerUnit, unit,
+                percentile(counts, count, max, 99) / nanosPerUnit, unit, max / nanosPerUnit, unit);
+    }
+}
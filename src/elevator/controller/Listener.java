@@ -59,7 +59,8 @@ class Listener implements Runnable {
                         controller.moveToFloor(floorPressed, direction);
                         break;
                     case 'v':
-                        System.out.println("Velocity changed.");
+                        EventLog.debug("Velocity changed.");
+                        controller.setVelocity(Double.parseDouble(command[1]));
                         break;
                     // When a panel button inside the elevator is pressed
                     case 'p':
@@ -72,7 +73,7 @@ class Listener implements Runnable {
                             controller.moveElevator(elevatorID, destination*100);
                         break;
                     default:
-                        System.out.println("default switch clause, something is wrong:\n" + Arrays.toString(command));
+                        EventLog.info("default switch clause, something is wrong: %s", Arrays.toString(command));
                         break;
                 }
             }
@@ -0,0 +1,47 @@
+package elevator.controller;
+
+/**
+ * Title:        Elevator Controller Nearest Policy
+ * Description:  A simple baseline: a hall call is taken by the nearest elevator,
+ *               whatever it is doing, and an elevator always goes to its nearest
+ *               request, in either direction.
+ * Company:      KTH
+ * Course:       ID1217 Concurrent Programming.
+ *
+ * @authors Emil Lindholm Brandt & Sabina Hauzenberger
+ * @version 1.0
+ */
+
+class NearestPolicy implements DispatchPolicy {
+
+    private static final int LEVEL = ElevatorState.LEVEL;
+
+    public String getName() {
+        return "nearest";
+    }
+
+    public ElevatorState assign(ElevatorState[] elevators, int level, int direction, double floorsPerSecond, long now,
+                                DemandPredictor demand) {
+        int lowestCost = Integer.MAX_VALUE;
+        ElevatorState best = null;
+        for (ElevatorState e : elevators) {
+            int cost = Math.abs(e.getLevel() - level);
+            if (cost < lowestCost) {
+                lowestCost = cost;
+                best = e;
+            }
+        }
+        return best;
+    }
+
+    public int nextStop(int level, int direction, FloorRequests upQueue, FloorRequests downQueue) {
+        int above = (level + LEVEL - 1) / LEVEL, below = level / LEVEL;
+        int next = -1;
+        for (int f : new int[]{upQueue.nextAtOrAbove(above), downQueue.nextAtOrAbove(above),
+                upQueue.nextAtOrBelow(below), downQueue.nextAtOrBelow(below)}) {
+            if (f != -1 && (next == -1 || Math.abs(f * LEVEL - level) < Math.abs(next * LEVEL - level)))
+                next = f;
+        }
+        return next;
+    }
+}
@@ -0,0 +1,137 @@
+package elevator.controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Title:        Elevator Controller Parking
+ * Description:  Spreads the idle elevators over home floors, so the next hall call
+ *               does not pay a trip through the whole shaft when all elevators have
+ *               ended up at one end of the building. The home floors come from the
+ *               "-park" option of Elevators in the order of priority, e.g. "0,0,10"
+ *               keeps two elevators at the lobby before one goes to floor 10; by
+ *               default the elevators are placed where the demand predictor expects
+ *               the calls at this time of the day, or, until it has seen enough
+ *               calls, the shaft is split into one zone per elevator, the lowest zone
+ *               first, and the elevators beyond one per floor stay where they are. An
+ *               elevator that has been idle for PARK_DELAY is sent to the home floor
+ *               it is nearest to of those not taken yet, through the normal motor
+ *               commands, and any request cancels its parking. The traffic mode
+ *               changes the home floors: in up-peak the elevators return to the lobby
+ *               first, as many as its share of the calls.
+ * Company:      KTH
+ * Course:       ID1217 Concurrent Programming.
+ *
+ * @authors Emil Lindholm Brandt & Sabina Hauzenberger
+ * @version 1.0
+ */
+
+class Parking {
+
+    /* How long an elevator stays where it has become idle before it is parked, in ns */
+    private static final long PARK_DELAY = 3000000000L;
+
+    /* The home floors in the order of priority, floor 4 as 400 */
+    private final int[] homes;
+    /* Places the elevators by the predicted calls, null if the home floors are given */
+    private final DemandPredictor demand;
+    /* The predicted home floors, kept for the bucket of the day they were predicted in */
+    private int[] predicted;
+    private int predictedBucket = -1;
+
+    /**
+     * Creates the parking of a number of elevators.
+     * @param floors The home floors separated by commas, or "" to place the elevators by demand.
+     * @param elevators The number of elevators.
+     * @param top The top floor.
+     * @param demand The predicted calls, used if the home floors are not given.
+     */
+    Parking(String floors, int elevators, int top, DemandPredictor demand) {
+        this.demand = (floors.length() == 0) ? demand : null;
+        if (floors.length() == 0) {
+            // The lowest floor of each zone, one zone per elevator but at least a floor each
+            int zones = Math.min(elevators, top + 1);
+            homes = new int[zones];
+            for (int k = 0; k < zones; k++)
+                homes[k] = (int) ((long) k * (top + 1) / zones) * ElevatorState.LEVEL;
+        } else {
+            String[] parts = floors.split(",");
+            homes = new int[parts.length];
+            for (int k = 0; k < parts.length; k++)
+                homes[k] = Integer.parseInt(parts[k].trim()) * ElevatorState.LEVEL;
+        }
+    }
+
+    /**
+     * Sends the elevators that have been idle long enough to the free home floors.
+     * @param elevators All elevators.
+     * @param now The current time in nanoseconds.
+     * @param traffic The current traffic mode.
+     * @return The number of elevators sent to park.
+     */
+    int run(ElevatorState[] elevators, long now, TrafficMonitor traffic) {
+        int mode = traffic.getMode(now);
+        // The idle elevators, with the home floors they are parked at or on their way to
+        List<ElevatorState> free = new ArrayList<ElevatorState>();
+        for (ElevatorState e : elevators) {
+            long idle = e.idleFor(now);
+            if (idle >= PARK_DELAY)
+                free.add(e);
+        }
+        if (free.isEmpty())
+            return 0;
+        int[] homes = homeFloors(elevators.length, traffic, mode);
+        int sent = 0;
+        for (int k = 0; k < homes.length && !free.isEmpty(); k++) {
+            ElevatorState nearest = null;
+            int distance = Integer.MAX_VALUE;
+            for (ElevatorState e : free) {
+                int d = Math.abs(e.getParkedLevel() - homes[k]);
+                if (d < distance) {
+                    distance = d;
+                    nearest = e;
+                }
+            }
+            free.remove(nearest);
+            if (nearest.park(homes[k])) {
+                EventLog.info("===> ELEVATOR #%d parks at %d (%s)", nearest.getId(), homes[k],
+                        TrafficMonitor.MODES[mode]);
+                sent++;
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * Gives the home floors in the order of priority for a traffic mode: the given or
+     * predicted ones, after the lobby for its share of the elevators in up-peak.
+     */
+    private int[] homeFloors(int elevators, TrafficMonitor traffic, int mode) {
+        int[] homes = this.homes;
+        if (demand != null) {
+            // Predicted once a bucket, the elevators are not moved on each new call
+            long millis = System.currentTimeMillis();
+            int b = DemandPredictor.bucket(millis);
+            if (b != predictedBucket || predicted == null) {
+                predicted = demand.homeFloors(homes.length, millis);
+                predictedBucket = b;
+            }
+            if (predicted != null) {
+                homes = new int[predicted.length];
+                for (int k = 0; k < homes.length; k++)
+                    homes[k] = predicted[k] * ElevatorState.LEVEL;
+            }
+        }
+        if (mode != TrafficMonitor.UP_PEAK)
+            return homes;
+        // The lobby first, then the other home floors of the elevators left
+        int lobby = traffic.lobbyElevators(elevators);
+        int[] peak = new int[Math.max(lobby, homes.length)];
+        int k = lobby;
+        for (int home : homes)
+            if (home != 0 && k < peak.length)
+                peak[k++] = home;
+        return Arrays.copyOf(peak, k);
+    }
+}
@@ -0,0 +1,187 @@
+package elevator.controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Title:        Elevator Controller Reassignment
+ * Description:  One pass that reassigns all hall calls not served yet to the elevators
+ *               jointly. An elevator may get several calls: the k-th call it gets is
+ *               expected k door cycles later than its arrival with the cab calls only.
+ *               A call costs the square of its total waiting time, so the long waits
+ *               are shortened first, and the assignment of least total cost is solved
+ *               by the Hungarian method in O(calls^2 * elevators * slots). A call
+ *               moves only if its new elevator is expected to arrive HYSTERESIS
+ *               seconds earlier, so the calls do not bounce between elevators, and
+ *               never to an elevator the traffic mode keeps from it, see TrafficMonitor.
+ * Company:      KTH
+ * Course:       ID1217 Concurrent Programming.
+ *
+ * @authors Emil Lindholm Brandt & Sabina Hauzenberger
+ * @version 1.0
+ */
+
+class Reassignment {
+
+    /* How much earlier in seconds another elevator must arrive to take a call */
+    private static final double HYSTERESIS = 2.0;
+    /* Added to the time of an elevator the traffic mode keeps from a call, in seconds */
+    private static final double FORBIDDEN = 1000.0;
+
+    /**
+     * A hall call, and the elevators it has been given to.
+     */
+    private static class Call {
+        final int level;
+        final int direction;
+        long since;
+        final ArrayList<ElevatorState> owners = new ArrayList<ElevatorState>(1);
+
+        Call(int level, int direction, long since) {
+            this.level = level;
+            this.direction = direction;
+            this.since = since;
+        }
+    }
+
+    private final ElevatorState[] elevators;
+    private final TrafficMonitor traffic;
+    private final ArrayList<Call> calls = new ArrayList<Call>();
+
+    /**
+     * Creates a reassignment of the hall calls of the given elevators.
+     * @param elevators The elevators.
+     * @param traffic The traffic mode, which may keep a call from some elevators.
+     */
+    Reassignment(ElevatorState[] elevators, TrafficMonitor traffic) {
+        this.elevators = elevators;
+        this.traffic = traffic;
+        for (ElevatorState e : elevators)
+            e.collectCalls(this);
+    }
+
+    /**
+     * Adds a hall call of an elevator. A call given to several elevators, e.g. as the
+     * button has been pressed twice, is one call.
+     * @param owner The elevator the call has been given to.
+     * @param level The floor of the call.
+     * @param direction The direction of the call.
+     * @param since When the call has been made, in nanoseconds.
+     */
+    void add(ElevatorState owner, int level, int direction, long since) {
+        for (Call c : calls) {
+            if (c.level == level && c.direction == direction) {
+                if (since != 0 && (c.since == 0 || since - c.since < 0))
+                    c.since = since;
+                c.owners.add(owner);
+                return;
+            }
+        }
+        Call c = new Call(level, direction, since);
+        c.owners.add(owner);
+        calls.add(c);
+    }
+
+    /**
+     * Solves the assignment and moves the calls whose elevator has changed.
+     * @param floorsPerSecond The velocity of the elevators.
+     * @param now The current time in nanoseconds.
+     * @return The number of calls moved.
+     */
+    int run(double floorsPerSecond, long now) {
+        int n = calls.size(), m = elevators.length;
+        if (n == 0 || m < 2)
+            return 0;
+        boolean sectors = traffic.getMode(now) == TrafficMonitor.DOWN_PEAK;
+        // Enough slots for every call, and a choice of elevators for each
+        int slots = Math.min(n, Math.max(2, (2 * n + m - 1) / m));
+        double[][] cost = new double[n + 1][m * slots + 1];
+        for (int i = 0; i < n; i++) {
+            Call c = calls.get(i);
+            double waited = (c.since == 0) ? 0 : Math.max(0, (now - c.since) / 1e9);
+            for (int j = 0; j < m; j++) {
+                ElevatorState e = elevators[j];
+                double eta = e.estimateArrivalWithoutCalls(c.level, c.direction, floorsPerSecond, now);
+                if (c.owners.contains(e))
+                    eta = Math.max(0, eta - HYSTERESIS);
+                else if (sectors && !traffic.mayServe(e, m, c.level / ElevatorState.LEVEL, c.direction))
+                    eta += FORBIDDEN;
+                for (int k = 0; k < slots; k++) {
+                    double wait = waited + eta + k * ElevatorState.DOOR_SECONDS;
+                    cost[i + 1][j * slots + k + 1] = wait * wait;
+                }
+            }
+        }
+        int[] column = solve(cost, n, m * slots);
+        int moved = 0;
+        for (int i = 0; i < n; i++) {
+            Call c = calls.get(i);
+            ElevatorState to = elevators[(column[i + 1] - 1) / slots];
+            for (ElevatorState from : c.owners) {
+                if (from != to && from.moveCall(to, c.level, c.direction)) {
+                    EventLog.info("===> Hall call at %d moved from ELEVATOR #%d to #%d",
+                            c.level, from.getId(), to.getId());
+                    moved++;
+                }
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Solves the assignment problem of least total cost by the Hungarian method with
+     * potentials. Rows and columns are numbered from 1, row and column 0 are unused.
+     * @param cost The cost of each row in each column.
+     * @param rows The number of rows.
+     * @param columns The number of columns, at least the number of rows.
+     * @return The column of each row.
+     */
+    private static int[] solve(double[][] cost, int rows, int columns) {
+        double[] u = new double[rows + 1], v = new double[columns + 1], minv = new double[columns + 1];
+        int[] p = new int[columns + 1], way = new int[columns + 1];
+        boolean[] used = new boolean[columns + 1];
+        for (int i = 1; i <= rows; i++) {
+            p[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, Double.MAX_VALUE);
+            Arrays.fill(used, false);
+            do {
+                used[j0] = true;
+                int i0 = p[j0], j1 = 0;
+                double delta = Double.MAX_VALUE;
+                for (int j = 1; j <= columns; j++) {
+                    if (used[j])
+                        continue;
+                    double cur = cost[i0][j] - u[i0] - v[j];
+                    if (cur < minv[j]) {
+                        minv[j] = cur;
+                        way[j] = j0;
+                    }
+                    if (minv[j] < delta) {
+                        delta = minv[j];
+                        j1 = j;
+                    }
+                }
+                for (int j = 0; j <= columns; j++) {
+                    if (used[j]) {
+                        u[p[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (p[j0] != 0);
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+        int[] column = new int[rows + 1];
+        for (int j = 1; j <= columns; j++)
+            if (p[j] != 0)
+                column[p[j]] = j;
+        return column;
+    }
+}
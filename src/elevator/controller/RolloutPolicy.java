@@ -0,0 +1,178 @@
+package elevator.controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Title:        Elevator Controller Rollout Policy
+ * Description:  A hall call is taken by the elevator whose assignment plays out best
+ *               in a short look-ahead simulation, which sees what the heuristic costs
+ *               do not: the calls an elevator already has are delayed by the new stop,
+ *               and so are the floors its new passengers press. The state of each of
+ *               the CANDIDATES elevators with the earliest estimated arrivals, see
+ *               EtaPolicy, is copied into a CarModel; a rollout plays two copies of it
+ *               for HORIZON, with and without the call, and the waiting the call adds,
+ *               its own and that of the calls it delays, is its cost. The elevators do
+ *               not meet in the models, so the others would play out the same either
+ *               way. The rollouts run in parallel on the common ForkJoin pool, and the
+ *               controller waits for them on a thread of its own, without its lock; one
+ *               not done within the time budget of the "-rollout" option of Elevators
+ *               is left out, and if none is done the earliest estimated arrival wins.
+ *               The elevators stop in the collective order, as the models do.
+ * Company:      KTH
+ * Course:       ID1217 Concurrent Programming.
+ *
+ * @authors Emil Lindholm Brandt & Sabina Hauzenberger
+ * @version 1.0
+ */
+
+class RolloutPolicy extends CollectivePolicy {
+
+    /* The elevators tried for a call, those with the earliest estimated arrivals */
+    private static final int CANDIDATES = 4;
+    /* How far the rollouts look ahead, in seconds */
+    private static final double HORIZON = 60;
+    /* The events played between two looks at the clock */
+    private static final int CLOCK_EVENTS = 256;
+
+    /* The time budget of an assignment in nanoseconds */
+    private final long budget;
+
+    /**
+     * Creates a rollout policy.
+     * @param budget The time budget of an assignment in milliseconds.
+     */
+    RolloutPolicy(int budget) {
+        this.budget = budget * 1000000L;
+    }
+
+    public String getName() {
+        return "rollout";
+    }
+
+    public ElevatorState assign(ElevatorState[] elevators, int level, int direction, double floorsPerSecond,
+                                long now, DemandPredictor demand) {
+        return start(elevators, level, direction, floorsPerSecond, now).best();
+    }
+
+    /**
+     * Copies the candidates for a hall call into models and starts their rollouts, for
+     * the controller to wait for them with best once it has released its lock.
+     * @param elevators All elevators.
+     * @param level The floor of the call, floor 4 as 400.
+     * @param direction The requested direction.
+     * @param floorsPerSecond The velocity of the elevators.
+     * @param now The time of the call in nanoseconds.
+     * @return The rollouts under way.
+     */
+    Rollouts start(ElevatorState[] elevators, final int level, final int direction,
+                   final double floorsPerSecond, long now) {
+        final long deadline = now + budget;
+        // The candidates in the order of their estimated arrivals, the first wins by default
+        Integer[] order = new Integer[elevators.length];
+        final double[] eta = new double[elevators.length];
+        for (int k = 0; k < elevators.length; k++) {
+            order[k] = k;
+            eta[k] = elevators[k].arrivalFromCosts(level, direction, floorsPerSecond, now);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(eta[a], eta[b]);
+            }
+        });
+        // No rollouts if the first candidate is the only one or there is no time for them
+        int candidates = (elevators.length == 1 || budget == 0) ? 0 : Math.min(CANDIDATES, elevators.length);
+        ElevatorState[] tried = new ElevatorState[Math.max(1, candidates)];
+        tried[0] = elevators[order[0]];
+        List<ForkJoinTask<Double>> rollouts = new ArrayList<ForkJoinTask<Double>>(candidates);
+        for (int c = 0; c < candidates; c++) {
+            tried[c] = elevators[order[c]];
+            final CarModel model = tried[c].model(now);
+            rollouts.add(ForkJoinPool.commonPool().submit(new Callable<Double>() {
+                public Double call() {
+                    return rollout(model, level / ElevatorState.LEVEL, direction, floorsPerSecond, deadline);
+                }
+            }));
+        }
+        return new Rollouts(tried, rollouts, deadline);
+    }
+
+    /**
+     * The rollouts of the candidates for a hall call, in the order of their estimated
+     * arrivals, none if the first candidate wins without them.
+     */
+    static final class Rollouts {
+        private final ElevatorState[] candidates;
+        private final List<ForkJoinTask<Double>> rollouts;
+        private final long deadline;
+
+        private Rollouts(ElevatorState[] candidates, List<ForkJoinTask<Double>> rollouts, long deadline) {
+            this.candidates = candidates;
+            this.rollouts = rollouts;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Waits for the rollouts until the deadline and gives the candidate whose
+         * rollout costs least, the earliest estimated arrival if none is done.
+         * @return The elevator.
+         */
+        ElevatorState best() {
+            ElevatorState best = candidates[0];
+            double lowestCost = Double.MAX_VALUE;
+            for (int c = 0; c < rollouts.size(); c++) {
+                double cost = Double.NaN;
+                try {
+                    cost = rollouts.get(c).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    // Over the budget: left out
+                    rollouts.get(c).cancel(false);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    e.printStackTrace();
+                }
+                if (EventLog.isDebug())
+                    EventLog.debug("Elevator %d has a rollout cost of %.2f s", candidates[c].getId(), cost);
+                if (!Double.isNaN(cost) && cost < lowestCost) {
+                    lowestCost = cost;
+                    best = candidates[c];
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Plays the look-ahead of an elevator with and without the call.
+     * @return The waiting the call adds in seconds, NaN if over the deadline.
+     */
+    private double rollout(CarModel model, int floor, int direction, double floorsPerSecond, long deadline) {
+        CarModel with = model.copy();
+        with.addCall(floor, direction, 0, 0);
+        return play(with, floorsPerSecond, deadline) - play(model, floorsPerSecond, deadline);
+    }
+
+    /**
+     * Plays a model until the end of the look-ahead.
+     * @return The total waiting of its calls in seconds, those served and those still
+     * waiting at the end, NaN if over the deadline.
+     */
+    private double play(CarModel car, double floorsPerSecond, long deadline) {
+        double waited = 0;
+        for (int events = 1; car.getReady() < HORIZON; events++) {
+            waited += car.step(this, floorsPerSecond);
+            if (events % CLOCK_EVENTS == 0 && System.nanoTime() - deadline > 0)
+                return Double.NaN;
+        }
+        return waited + car.waitingAt(HORIZON);
+    }
+}
@@ -0,0 +1,38 @@
+package elevator.controller;
+
+/**
+ * Title:        Elevator Controller Stop Count Policy
+ * Description:  The first policy of the controller: a hall call is taken by the
+ *               elevator with the fewest stops before it, see
+ *               ElevatorState.calcStopsBeforeService, and the elevators stop in the
+ *               collective order. The counts are read from the costs each elevator
+ *               keeps up to date.
+ * Company:      KTH
+ * Course:       ID1217 Concurrent Programming.
+ *
+ * @authors Emil Lindholm Brandt & Sabina Hauzenberger
+ * @version 1.0
+ */
+
+class StopCountPolicy extends CollectivePolicy {
+
+    public String getName() {
+        return "stops";
+    }
+
+    public ElevatorState assign(ElevatorState[] elevators, int level, int direction, double floorsPerSecond, long now,
+                                DemandPredictor demand) {
+        int lowestCost = Integer.MAX_VALUE;
+        ElevatorState best = null;
+        for (ElevatorState e : elevators) {
+            int cost = e.stopsFromCosts(level, direction);
+            if (EventLog.isDebug())
+                EventLog.debug("Elevator %d has cost %d", e.getId(), cost);
+            if (cost < lowestCost || best == null) {
+                lowestCost = cost;
+                best = e;
+            }
+        }
+        return best;
+    }
+}
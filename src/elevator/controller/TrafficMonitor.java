@@ -0,0 +1,202 @@
+package elevator.controller;
+
+import elevator.Elevators;
+
+import java.util.ArrayDeque;
+
+/**
+ * Title:        Elevator Controller Traffic Monitor
+ * Description:  Classifies the current traffic from the hall calls ("b") and cab calls
+ *               ("p") of the last WINDOW: up-peak when most calls are made at the lobby
+ *               to go up, down-peak when most cab calls go to the lobby, lunch when
+ *               many calls go both ways through the lobby, and inter-floor otherwise.
+ *               A mode is left at thresholds a bit below those that entered it, so the
+ *               mode does not flap at the border, and every switch is logged with the
+ *               counts that caused it. The controller dispatches by the mode: in
+ *               up-peak the idle elevators return to the lobby, as many as its share of
+ *               the calls, and in down-peak the down calls of a sector of the
+ *               floors are left to its own elevator and those passing on their way down.
+ * Company:      KTH
+ * Course:       ID1217 Concurrent Programming.
+ *
+ * @authors Emil Lindholm Brandt & Sabina Hauzenberger
+ * @version 1.0
+ */
+
+class TrafficMonitor {
+
+    /* The traffic modes */
+    static final int INTER_FLOOR = 0;
+    static final int UP_PEAK = 1;
+    static final int DOWN_PEAK = 2;
+    static final int LUNCH = 3;
+    static final String[] MODES = {"inter-floor", "up-peak", "down-peak", "lunch"};
+
+    /* The calls are counted over this last time, in ns */
+    private static final long WINDOW = 300000000000L;
+    /* The hall calls in the window below which the traffic is taken as inter-floor */
+    private static final int MIN_CALLS = 12;
+    /* The share of the hall calls made at the lobby, or of the cab calls to it, for a peak */
+    private static final double PEAK_SHARE = 0.5;
+    /* The share of the hall calls each way through the lobby for lunch */
+    private static final double LUNCH_SHARE = 0.25;
+    /* How much lower the shares may fall before a mode is left */
+    private static final double HYSTERESIS = 0.1;
+
+    /* The kinds of calls counted */
+    private static final int FROM_LOBBY = 0;
+    private static final int TO_LOBBY = 1;
+    private static final int HALL = 2;
+
+    /**
+     * A call in the window.
+     */
+    private static class Call {
+        final long time;
+        final int kind;
+
+        Call(long time, int kind) {
+            this.time = time;
+            this.kind = kind;
+        }
+    }
+
+    private final ArrayDeque<Call> window = new ArrayDeque<Call>();
+    /* The calls of each kind in the window */
+    private final int[] counts = new int[3];
+    /* The top floor, for the sectors */
+    private final int top;
+    private volatile int mode = INTER_FLOOR;
+    private long switches;
+
+    /**
+     * Creates a monitor of the traffic of a building.
+     * @param top The top floor.
+     */
+    TrafficMonitor(int top) {
+        this.top = top;
+    }
+
+    /**
+     * Counts a hall call.
+     * @param floor The floor of the call.
+     * @param direction The requested direction.
+     * @param now The time of the call in nanoseconds.
+     */
+    synchronized void hallCall(int floor, int direction, long now) {
+        add(HALL, now);
+        if (floor == 0)
+            add(FROM_LOBBY, now);
+        classify(now);
+    }
+
+    /**
+     * Counts a cab call.
+     * @param destination The requested floor.
+     * @param now The time of the call in nanoseconds.
+     */
+    synchronized void cabCall(int destination, long now) {
+        if (destination == 0) {
+            add(TO_LOBBY, now);
+            classify(now);
+        }
+    }
+
+    private void add(int kind, long now) {
+        window.addLast(new Call(now, kind));
+        counts[kind]++;
+    }
+
+    /**
+     * Drops the calls older than the window and switches the mode if the shares of the
+     * rest call for it.
+     */
+    private void classify(long now) {
+        while (!window.isEmpty() && now - window.peekFirst().time > WINDOW)
+            counts[window.pollFirst().kind]--;
+        int calls = counts[HALL];
+        double from = (calls == 0) ? 0 : (double) counts[FROM_LOBBY] / calls;
+        double to = (calls == 0) ? 0 : Math.min(1, (double) counts[TO_LOBBY] / calls);
+        int next = INTER_FLOOR;
+        if (calls >= MIN_CALLS) {
+            if (from >= PEAK_SHARE - margin(UP_PEAK) && from >= 2 * to - margin(UP_PEAK))
+                next = UP_PEAK;
+            else if (to >= PEAK_SHARE - margin(DOWN_PEAK) && to >= 2 * from - margin(DOWN_PEAK))
+                next = DOWN_PEAK;
+            else if (from >= LUNCH_SHARE - margin(LUNCH) && to >= LUNCH_SHARE - margin(LUNCH))
+                next = LUNCH;
+        }
+        if (next != mode) {
+            EventLog.info("===> Traffic mode %s -> %s: %d hall calls in %d s, %.0f%% from the lobby, %.0f%% to it",
+                    MODES[mode], MODES[next], calls, WINDOW / 1000000000L, from * 100, to * 100);
+            mode = next;
+            switches++;
+        }
+    }
+
+    /* How much lower the thresholds of a mode are when it is the current one */
+    private double margin(int m) {
+        return (mode == m) ? HYSTERESIS : 0;
+    }
+
+    /**
+     * Gives the current traffic mode, after the calls older than the window have been
+     * dropped, so the mode falls back to inter-floor once the calls stop.
+     * @param now The current time in nanoseconds.
+     * @return One of INTER_FLOOR, UP_PEAK, DOWN_PEAK and LUNCH.
+     */
+    synchronized int getMode(long now) {
+        classify(now);
+        return mode;
+    }
+
+    /**
+     * Gives the number of times the traffic mode has changed.
+     * @return The number of switches.
+     */
+    synchronized long getSwitchCount() {
+        return switches;
+    }
+
+    /**
+     * Gives the highest floor of the sector of an elevator in down-peak: the floors above
+     * the lobby are split into one sector per elevator, the first elevator has the lowest.
+     * @param id The ID of the elevator, from 1.
+     * @param elevators The number of elevators.
+     * @return The highest floor of the sector.
+     */
+    int sectorTop(int id, int elevators) {
+        return (int) Math.round((double) id * top / elevators);
+    }
+
+    /**
+     * Gives the number of elevators to keep at the lobby in up-peak: its share of the
+     * hall calls, at least one.
+     * @param elevators The number of elevators.
+     * @return The number of elevators.
+     */
+    synchronized int lobbyElevators(int elevators) {
+        int calls = counts[HALL];
+        double share = (calls == 0) ? 0 : (double) counts[FROM_LOBBY] / calls;
+        return Math.max(1, (int) (share * elevators));
+    }
+
+    /**
+     * Tells whether an elevator may take a hall call in the mode last given by getMode.
+     * In down-peak a down call is taken by the elevator of its sector, an idle one, or
+     * one on its way down from above.
+     * @param e The elevator.
+     * @param elevators The number of elevators.
+     * @param floor The floor of the call.
+     * @param direction The requested direction.
+     * @return True if the elevator may take the call.
+     */
+    boolean mayServe(ElevatorState e, int elevators, int floor, int direction) {
+        if (mode != DOWN_PEAK || direction != Elevators.DOWN || floor == 0)
+            return true;
+        int id = e.getId();
+        // Read without the locks of the elevators, as the dispatch holds that of the controller
+        return (floor > sectorTop(id - 1, elevators) && floor <= sectorTop(id, elevators)) || e.isFree()
+                || e.headsDownPast(floor * ElevatorState.LEVEL);
+    }
+}
@@ -98,6 +98,20 @@ public interface GetAll extends Remote {
    * @throws RemoteException is failed to execute
    */
   public double getVelocity() throws RemoteException;
+  /**
+   * Sets the time-warp factor, i.e. the rate of the simulation time against the
+   * wall-clock time regardless of the velocity slider.
+   * @param factor The factor the simulation time is sped up with, 0 - as fast as possible.
+   * @throws RemoteException is failed to execute
+   * @throws IllegalParamException if the factor is negative
+   */
+  public void setTimeWarp(double factor) throws RemoteException, IllegalParamException;
+  /**
+   * Returns the time-warp factor.
+   * @return The factor the simulation time is sped up with, 0 if it runs as fast as possible.
+   * @throws RemoteException is failed to execute
+   */
+  public double getTimeWarp() throws RemoteException;
   /**
    * Returns the total number of elevators.
    * @return An interger number of elevators.
@@ -837,6 +837,34 @@ public final class MakeAll {
     if (getAll == null) init(host, java.rmi.registry.Registry.REGISTRY_PORT);
     return getAll.getVelocity();
   }
+  /**
+   * Sets the time-warp factor, i.e. the rate of the simulation time against the
+   * wall-clock time regardless of the velocity slider. Velocity listeners are notified
+   * with the new velocity.
+   * @param factor The factor the simulation time is sped up with, 0 - as fast as possible.
+   * @throws RemoteException is failed to execute
+   * @throws IllegalParamException if the factor is negative
+   * @throws MalformedURLException if the URL of the Elevators proxy object (getALL)
+   *      is not an appropriately formatted URL.
+   * @throws NotBoundException is failed to obtain a reference to the getAll
+   */
+  public static void setTimeWarp(double factor) throws RemoteException,
+        IllegalParamException, MalformedURLException, NotBoundException  {
+    if (getAll == null) init(host, java.rmi.registry.Registry.REGISTRY_PORT);
+    getAll.setTimeWarp(factor);
+  }
+  /**
+   * Returns the time-warp factor.
+   * @return The factor the simulation time is sped up with, 0 if it runs as fast as possible.
+   * @throws RemoteException is failed to execute
+   * @throws MalformedURLException if the URL of the Elevators proxy object (getALL)
+   *      is not an appropriately formatted URL.
+   * @throws NotBoundException is failed to obtain a reference to the getAll
+   */
+  public static double getTimeWarp() throws RemoteException, MalformedURLException, NotBoundException  {
+    if (getAll == null) init(host, java.rmi.registry.Registry.REGISTRY_PORT);
+    return getAll.getTimeWarp();
+  }
   /**
    * Returns an object with the <code>Scale</code> interface which is
    *    used for controlling a scale of the elevator with the given number
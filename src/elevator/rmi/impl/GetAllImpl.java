@@ -156,6 +156,14 @@ public class GetAllImpl extends UnicastRemoteObject implements GetAll {
     }
 
     public double getVelocity() throws RemoteException {
-        return ElevatorGUI.velocity;
+        return ElevatorGUI.io.getSimulation().getTimeWarp().getVelocity();
+    }
+
+    public void setTimeWarp(double factor) throws RemoteException, IllegalParamException {
+        ElevatorGUI.io.warpRMI(factor);
+    }
+
+    public double getTimeWarp() throws RemoteException {
+        return ElevatorGUI.io.getSimulation().getTimeWarp().getFactor();
     }
 }
\ No newline at end of file
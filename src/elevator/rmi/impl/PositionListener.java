@@ -3,9 +3,9 @@ package elevator.rmi.impl;
 import java.rmi.RemoteException;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import javax.swing.Timer;
 import elevator.ElevatorGUI;
 import elevator.ElevatorIO;
+import elevator.ElevatorSimulation;
 import elevator.Elevators;
 import elevator.rmi.RemoteActionListener;
 import elevator.rmi.IllegalParamException;
@@ -21,7 +21,7 @@ import elevator.rmi.IllegalParamException;
 /**
  * The helper class <code>PositionListener</code> that implements the
  * <code>java.awt.event.ActionListener</code> interface for receiving action
- * events from an the elevator timer and create an action event
+ * events from the elevator simulation on each time step and create an action event
  * with a current position of one elevator with a given  number or all elevators
  * (special case).
  * An object with the <code>PositionListener</code> class forwards the
@@ -40,7 +40,7 @@ public class PositionListener implements ActionListener {
   private double[] oldPositions, newPositions;
   private int numberOfElevators = Elevators.numberOfElevators;
   private ElevatorIO io = ElevatorGUI.io;
-  private Timer timer = ElevatorGUI.timer;
+  private ElevatorSimulation simulation = io.getSimulation();
   private String eol = System.getProperty("line.separator", "\n");
 
     /**
@@ -57,8 +57,7 @@ public class PositionListener implements ActionListener {
         throws IllegalParamException {
     this.listener = listener;
     this.number = number;
-    timer = ElevatorGUI.timer;
-    if (timer != null) timer.addActionListener(this);
+    simulation.addTickListener(this);
     if (number == numberOfElevators)
       newPositions = oldPositions = io.whereAre();
     else newPosition = oldPosition = io.whereIs(number + 1);
@@ -110,7 +109,7 @@ public class PositionListener implements ActionListener {
   private void removePositionListener() {
     System.err.println("Got RemoteException while calling back to a position listener");
     System.err.println("Removing the listener");
-    timer.removeActionListener(this);
+    simulation.removeTickListener(this);
     listener = null; // hopefully will be gc-ed also
   }
 }
\ No newline at end of file